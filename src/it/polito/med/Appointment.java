@@ -1,103 +1,107 @@
 package it.polito.med;
 
+import java.time.LocalDate;
+import java.util.Comparator;
+
+/**
+ * View of an appointment kept in the {@link AppointmentStore}:
+ * the view only holds the id, the attributes are read from the store.
+ */
 public class Appointment implements Comparable<Appointment> {
-	// patient's infos
-	private String ssn;
-	private String name;
-	private String surname;
-	// doc's id
-	private String docID;
-	// more infos about the apointment
-	private String date;
-	private String startTime;
-	private String slotTime;
-	private String appID; // appointment id
-	private boolean accepted;
-	
+	// orders the appointments of a day by start time, ties broken by the appointment id
+	static final Comparator<Appointment> BY_TIME = Comparator.comparingInt(Appointment::getStartMinute)
+			.thenComparingInt(Appointment::getId);
+
+	private final AppointmentStore store;
+	private final int id; // numeric appointment id
+
+	Appointment(AppointmentStore store, int id) {
+		this.store = store;
+		this.id = id;
+	}
+
 	@Override
 	public int compareTo(Appointment o) {
 
-		return this.startTime.compareTo(o.startTime);
+		return Integer.compare(this.getStartMinute(), o.getStartMinute());
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Appointment && ((Appointment) o).store == this.store && ((Appointment) o).id == this.id;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.id;
 	}
 
-	
 	public boolean isAccepted() {
-		return accepted;
+		return store.is(id, AppointmentStore.ACCEPTED);
 	}
 
 	public void setAccepted(boolean accepted) {
-		this.accepted = accepted;
-	}
-
-	public Appointment(String ssn, String name, String surname, String docID, String date, String startTime,
-			String slotTime) {
-		super();
-		this.ssn = ssn;
-		this.name = name;
-		this.surname = surname;
-		this.docID = docID;
-		this.date = date;
-		this.startTime = startTime;
-		this.slotTime = slotTime;
-		
-	}
-	
+		store.set(id, AppointmentStore.ACCEPTED, accepted);
+	}
+
+	public boolean isCompleted() {
+		return store.is(id, AppointmentStore.COMPLETED);
+	}
+
+	public void setCompleted(boolean completed) {
+		store.set(id, AppointmentStore.COMPLETED, completed);
+	}
+
+	public boolean isNoShow() {
+		return store.is(id, AppointmentStore.NO_SHOW);
+	}
+
+	public void setNoShow(boolean noShow) {
+		store.set(id, AppointmentStore.NO_SHOW, noShow);
+	}
+
 	// this method return an appointment in string format as below
 	// "hh:mm=SSN"
 	public String toStringAppointment() {
-		return this.startTime+"="+this.ssn;
+		return getStartTime()+"="+getSsn();
 	}
-	
-	// getters and setters
+
+	// getters
 	public String getSsn() {
-		return ssn;
-	}
-	public void setSsn(String ssn) {
-		this.ssn = ssn;
+		return store.ssn(id);
 	}
 	public String getName() {
-		return name;
-	}
-	public void setName(String name) {
-		this.name = name;
+		return store.name(id);
 	}
 	public String getSurname() {
-		return surname;
-	}
-	public void setSurname(String surname) {
-		this.surname = surname;
+		return store.surname(id);
 	}
 	public String getDocID() {
-		return docID;
-	}
-	public void setDocID(String docID) {
-		this.docID = docID;
+		return store.docID(id);
 	}
 	public String getDate() {
-		return date;
+		return LocalDate.ofEpochDay(getEpochDay()).toString();
 	}
-	public void setDate(String date) {
-		this.date = date;
+	public int getEpochDay() {
+		return store.day(id);
 	}
 	public String getStartTime() {
-		return startTime;
-	}
-	public void setStartTime(String startTime) {
-		this.startTime = startTime;
+		return Times.toTime(getStartMinute());
 	}
 	public String getSlotTime() {
-		return slotTime;
-	}
-	public void setSlotTime(String slotTime) {
-		this.slotTime = slotTime;
+		return Times.toSlot(getStartMinute(), getEndMinute());
 	}
 	public String getAppID() {
-		return appID;
+		return Integer.toString(id);
 	}
-	public void setAppID(String appID) {
-		this.appID = appID;
+	public int getId() {
+		return id;
 	}
-	
-	
-	
-}
\ No newline at end of file
+	public int getStartMinute() {
+		return store.start(id);
+	}
+	public int getEndMinute() {
+		return store.end(id);
+	}
+
+}
@@ -0,0 +1,136 @@
+package it.polito.med;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Ordered (date, time) index over a group of appointments,
+ * e.g. the ones of a single doctor or of the whole centre.
+ * The appointments of a day are kept as a sorted array of start minute and id
+ * packed in a long, so the index holds no object for each appointment.
+ */
+class AppointmentIndex {
+
+	private final AppointmentStore store;
+	// key epoch day, value appointments of the day ordered by start time
+	private TreeMap<Integer,Day> byDate = new TreeMap<>();
+	private int size=0;
+
+	AppointmentIndex(AppointmentStore store) {
+		this.store = store;
+	}
+
+	// the appointment must be indexed before its day or time change
+	public void add(int id) {
+		if (this.byDate.computeIfAbsent(store.day(id), d->new Day()).add(key(id)))
+			size++;
+	}
+
+	public void remove(int id) {
+		Day day = this.byDate.get(store.day(id));
+		if (day == null || !day.remove(key(id)))
+			return;
+		size--;
+		// do not keep empty days around
+		if (day.size == 0)
+			this.byDate.remove(store.day(id));
+	}
+
+	private long key(int id) {
+		return (long) store.start(id) << 32 | id;
+	}
+
+	// appointments of a single date, ordered by time
+	public Stream<Appointment> onDate(String date) {
+		Day day = this.byDate.get(epochDay(date));
+		return day == null ? Stream.empty() : day.ids().mapToObj(id->new Appointment(store, id));
+	}
+
+	// visits the appointments of a single date in time order, without intermediate objects
+	public void visitDate(String date, AppointmentVisitor visitor) {
+		Day day = this.byDate.get(epochDay(date));
+		if (day == null)
+			return;
+		for (int i=0; i<day.size; i++) {
+			int id = (int) day.keys[i];
+			visitor.visit((int) (day.keys[i] >>> 32), id, store.ssn(id));
+		}
+	}
+
+	// number of appointments on a single date
+	public int countOnDate(String date) {
+		Day day = this.byDate.get(epochDay(date));
+		return day == null ? 0 : day.size;
+	}
+
+	// ids of the appointments between the two dates (both included), ordered by date and time;
+	// the stream walks the days lazily without copying them
+	public IntStream idsBetween(String from, String to) {
+		if (from.compareTo(to) > 0)
+			return IntStream.empty();
+		return this.byDate.subMap(epochDay(from), true, epochDay(to), true).values().stream()
+				.flatMapToInt(Day::ids);
+	}
+
+	// appointments between the two dates (both included), ordered by date and time
+	public Stream<Appointment> between(String from, String to) {
+		return idsBetween(from, to).mapToObj(id->new Appointment(store, id));
+	}
+
+	// ids of all the appointments, ordered by date and time
+	public IntStream allIds() {
+		return this.byDate.values().stream().flatMapToInt(Day::ids);
+	}
+
+	// all the appointments, ordered by date and time
+	public Stream<Appointment> all() {
+		return allIds().mapToObj(id->new Appointment(store, id));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size==0;
+	}
+
+	private static int epochDay(String date) {
+		return (int) LocalDate.parse(date).toEpochDay();
+	}
+
+	// sorted keys of the appointments of a day
+	private static class Day {
+		long[] keys = new long[4];
+		int size=0;
+
+		boolean add(long key) {
+			int i = Arrays.binarySearch(keys, 0, size, key);
+			if (i >= 0)
+				return false;
+			i = -i-1;
+			if (size == keys.length)
+				keys = Arrays.copyOf(keys, size*2);
+			System.arraycopy(keys, i, keys, i+1, size-i);
+			keys[i] = key;
+			size++;
+			return true;
+		}
+
+		boolean remove(long key) {
+			int i = Arrays.binarySearch(keys, 0, size, key);
+			if (i < 0)
+				return false;
+			System.arraycopy(keys, i+1, keys, i, size-i-1);
+			size--;
+			return true;
+		}
+
+		IntStream ids() {
+			return Arrays.stream(keys, 0, size).mapToInt(k->(int) k);
+		}
+	}
+}
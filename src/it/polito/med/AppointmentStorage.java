@@ -0,0 +1,63 @@
+package it.polito.med;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Backing of the appointment table of a med centre, chosen when the
+ * {@link MedManager} is created.
+ * Off-heap backings keep long histories out of the garbage collector's way;
+ * doctor and patient dictionaries stay on the heap in any case.
+ */
+public final class AppointmentStorage {
+
+	private final boolean heap;
+	// backing file of the off-heap records, null for direct buffers
+	private final Path file;
+
+	private AppointmentStorage(boolean heap, Path file) {
+		this.heap = heap;
+		this.file = file;
+	}
+
+	/**
+	 * primitive arrays on the heap, the default
+	 *
+	 * @return the storage
+	 */
+	public static AppointmentStorage heap() {
+		return new AppointmentStorage(true, null);
+	}
+
+	/**
+	 * direct buffers outside of the heap
+	 *
+	 * @return the storage
+	 */
+	public static AppointmentStorage offHeap() {
+		return new AppointmentStorage(false, null);
+	}
+
+	/**
+	 * records in a memory-mapped file.
+	 * The file only backs the memory of the med centre: it is emptied here
+	 * and it cannot be used to restore the appointments.
+	 *
+	 * @param file	backing file, created or truncated
+	 * @return the storage
+	 * @throws IOException in case the file cannot be created
+	 */
+	public static AppointmentStorage mapped(Path file) throws IOException {
+		FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING).close();
+		return new AppointmentStorage(false, file);
+	}
+
+	AppointmentStore create() {
+		if (this.heap)
+			return new HeapAppointmentStore();
+		return new DirectAppointmentStore(this.file);
+	}
+}
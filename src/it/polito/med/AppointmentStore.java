@@ -0,0 +1,146 @@
+package it.polito.med;
+
+import java.util.ArrayList;
+
+/**
+ * Store of the appointments, addressed by the numeric id.
+ * Doctors and patients are dictionary encoded, the other attributes are fixed
+ * size columns kept by the subclasses, on the heap or outside of it;
+ * {@link Appointment} is only a view on the store.
+ * Ids start from 1 and are never reused, so cancelled appointments leave a hole.
+ */
+abstract class AppointmentStore {
+
+	// status flags
+	static final byte BOOKED=1, ACCEPTED=2, NO_SHOW=4, COMPLETED=8;
+
+	private final IdDictionary doctors = new IdDictionary();
+	// patients by ssn, name and surname: the names given with each booking are
+	// kept, a patient booking again under the same names shares the code
+	private final IdDictionary patients = new IdDictionary();
+	private final ArrayList<String> ssns = new ArrayList<>();
+	private final ArrayList<String> names = new ArrayList<>();
+	private final ArrayList<String> surnames = new ArrayList<>();
+
+	// last id assigned
+	private int last=0;
+	// appointments currently booked
+	private int size=0;
+
+	// code of a doctor in the doctor column, assigned on first use
+	int doctorCode(String docID) {
+		return this.doctors.code(docID);
+	}
+
+	// stores a new appointment and returns its id
+	int add(String docID, String ssn, String name, String surname, int epochDay, int startMinute, int endMinute) {
+		int id = ++last;
+		ensureCapacity(id);
+		write(id, this.doctors.code(docID), patientCode(ssn, name, surname), epochDay, startMinute, endMinute, BOOKED);
+		size++;
+		return id;
+	}
+
+	// moves an appointment to another doctor or time, its status is reset
+	void move(int id, String docID, int epochDay, int startMinute, int endMinute) {
+		write(id, this.doctors.code(docID), patient(id), epochDay, startMinute, endMinute, BOOKED);
+	}
+
+	void remove(int id) {
+		if (contains(id)) {
+			writeFlags(id, (byte) 0);
+			size--;
+		}
+	}
+
+	boolean contains(int id) {
+		return id > 0 && id <= last && (flags(id) & BOOKED) != 0;
+	}
+
+	// id of a booked appointment given as string, 0 if there is none
+	int find(String appID) {
+		if (appID == null)
+			return 0;
+		try {
+			int id = Integer.parseInt(appID);
+			return contains(id) ? id : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	// view of the appointment, null if it is not booked
+	Appointment get(int id) {
+		return contains(id) ? new Appointment(this, id) : null;
+	}
+
+	Appointment get(String appID) {
+		return get(find(appID));
+	}
+
+	private int patientCode(String ssn, String name, String surname) {
+		// lengths keep the key unambiguous whatever the names contain
+		int code = this.patients.code(ssn.length() + ":" + ssn + name.length() + ":" + name + surname);
+		if (code == this.ssns.size()) {
+			this.ssns.add(ssn);
+			this.names.add(name);
+			this.surnames.add(surname);
+		}
+		return code;
+	}
+
+	String docID(int id) {
+		return this.doctors.value(doctor(id));
+	}
+
+	String ssn(int id) {
+		return this.ssns.get(patient(id));
+	}
+
+	String name(int id) {
+		return this.names.get(patient(id));
+	}
+
+	String surname(int id) {
+		return this.surnames.get(patient(id));
+	}
+
+	boolean is(int id, byte flag) {
+		return (flags(id) & flag) != 0;
+	}
+
+	void set(int id, byte flag, boolean value) {
+		byte f = flags(id);
+		writeFlags(id, (byte) (value ? f | flag : f & ~flag));
+	}
+
+	// columns of the backing; reads of distinct ids may run in parallel
+
+	// makes room for the appointment with the given id
+	abstract void ensureCapacity(int id);
+
+	abstract void write(int id, int doctor, int patient, int epochDay, int startMinute, int endMinute, byte flags);
+
+	abstract void writeFlags(int id, byte flags);
+
+	// dictionary code of the doctor
+	abstract int doctor(int id);
+
+	// dictionary code of the patient
+	abstract int patient(int id);
+
+	// epoch day of the appointment
+	abstract int day(int id);
+
+	// minutes from midnight, end excluded
+	abstract int start(int id);
+
+	abstract int end(int id);
+
+	abstract byte flags(int id);
+
+	// appointments currently booked
+	int size() {
+		return size;
+	}
+}
@@ -0,0 +1,16 @@
+package it.polito.med;
+
+/**
+ * Receives the appointments of a listing one at a time,
+ * as primitive fields instead of formatted strings.
+ */
+@FunctionalInterface
+public interface AppointmentVisitor {
+
+	/**
+	 * @param startMinute	start time as minutes from midnight
+	 * @param appId			appointment id
+	 * @param ssn			ssn of the patient
+	 */
+	void visit(int startMinute, int appId, String ssn);
+}
@@ -0,0 +1,206 @@
+package it.polito.med;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Ingestion stage in front of a med centre: bookings from any number of
+ * producer threads are queued in a bounded queue and applied by a single
+ * consumer thread, in batches under one acquisition of the manager lock.
+ * The futures of a batch are completed once the whole batch is applied;
+ * the batch only shares the lock, there is no durable log to flush, so a
+ * completed future means the booking is applied in memory (and journaled
+ * for the followers when the centre is replicated).
+ * When the queue is full a request is rejected at once with a MedException,
+ * so producers can shed load or retry later instead of queueing without bound.
+ */
+public class BookingPipeline implements Closeable {
+
+	// a booking operation on the manager, returning the appointment id
+	private interface Booking {
+		String apply(MedManager mgr) throws MedException;
+	}
+
+	private static class Request {
+		final Booking booking;
+		final CompletableFuture<String> result = new CompletableFuture<>();
+		String id;
+		Throwable error;
+
+		Request(Booking booking) {
+			this.booking = booking;
+		}
+	}
+
+	// tells the consumer to stop, after the requests queued before it
+	private static final Request STOP = new Request(null);
+
+	private final MedManager mgr;
+	private final int maxBatch;
+	private final ArrayBlockingQueue<Request> queue;
+	private final Thread consumer;
+	// requests are queued under the read lock, the pipeline is closed under the write lock
+	private final ReadWriteLock closing = new ReentrantReadWriteLock();
+	private boolean closed=false;
+	private final AtomicLong rejected = new AtomicLong();
+	private volatile long batches=0;
+
+	/**
+	 * starts a pipeline in front of the med centre
+	 *
+	 * @param mgr		the med centre
+	 * @param capacity	maximum number of queued requests
+	 * @param maxBatch	maximum number of requests applied under one lock acquisition
+	 * @throws IllegalArgumentException if capacity or maxBatch are not positive
+	 */
+	public BookingPipeline(MedManager mgr, int capacity, int maxBatch) {
+		if (capacity <= 0 || maxBatch <= 0)
+			throw new IllegalArgumentException("capacity and maxBatch must be positive");
+		this.mgr = mgr;
+		this.maxBatch = maxBatch;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.consumer = new Thread(this::consume, "booking-pipeline");
+		this.consumer.setDaemon(true);
+		this.consumer.start();
+	}
+
+	/**
+	 * queues a booking as {@link MedManager#setAppointment}
+	 *
+	 * @param ssn		ssn of the patient
+	 * @param name		name of the patient
+	 * @param surname	surname of the patient
+	 * @param code		code id of the doctor
+	 * @param date		date of the appointment
+	 * @param slot		slot to be booked
+	 * @return the future appointment id, failed with the MedException of the booking
+	 * @throws MedException in case the queue is full
+	 */
+	public CompletableFuture<String> setAppointment(String ssn, String name, String surname,
+			String code, String date, String slot) throws MedException {
+		return submit(m->m.setAppointment(ssn, name, surname, code, date, slot));
+	}
+
+	/**
+	 * queues a booking as {@link MedManager#bookEarliest}
+	 *
+	 * @param ssn		ssn of the patient
+	 * @param name		name of the patient
+	 * @param surname	surname of the patient
+	 * @param speciality required speciality
+	 * @param from		first date for the appointment
+	 * @return the future appointment id, null if no slot is available
+	 * @throws MedException in case the queue is full
+	 */
+	public CompletableFuture<String> bookEarliest(String ssn, String name, String surname,
+			String speciality, String from) throws MedException {
+		return submit(m->m.bookEarliest(ssn, name, surname, speciality, from));
+	}
+
+	private CompletableFuture<String> submit(Booking booking) throws MedException {
+		Request r = new Request(booking);
+		boolean queued;
+		// a request is either queued before the stop marker or refused
+		this.closing.readLock().lock();
+		try {
+			if (closed)
+				throw new IllegalStateException("pipeline closed");
+			queued = this.queue.offer(r);
+		} finally {
+			this.closing.readLock().unlock();
+		}
+		if (!queued) {
+			this.rejected.incrementAndGet();
+			throw new MedException("Booking queue full");
+		}
+		return r.result;
+	}
+
+	private void consume() {
+		List<Request> batch = new ArrayList<>(this.maxBatch);
+		while (true) {
+			try {
+				batch.add(this.queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			this.queue.drainTo(batch, this.maxBatch - 1);
+			boolean stop = false;
+			synchronized (this.mgr) {
+				for (Request r : batch) {
+					if (r == STOP) {
+						stop = true;
+						continue;
+					}
+					// whatever a booking throws, the consumer goes on with the others
+					try {
+						r.id = r.booking.apply(this.mgr);
+					} catch (Throwable e) {
+						r.error = e;
+					}
+				}
+			}
+			// callers see the results once the whole batch is applied
+			for (Request r : batch)
+				if (r != STOP) {
+					if (r.error == null)
+						r.result.complete(r.id);
+					else
+						r.result.completeExceptionally(r.error);
+				}
+			batches++;
+			batch.clear();
+			if (stop)
+				return;
+		}
+	}
+
+	/**
+	 * @return the number of requests rejected because the queue was full
+	 */
+	public long rejected() {
+		return this.rejected.get();
+	}
+
+	/**
+	 * @return the number of batches applied
+	 */
+	public long batches() {
+		return this.batches;
+	}
+
+	/**
+	 * @return the number of requests waiting in the queue
+	 */
+	public int queued() {
+		return this.queue.size();
+	}
+
+	/**
+	 * stops accepting requests and waits until the queued ones are applied
+	 */
+	@Override
+	public void close() {
+		this.closing.writeLock().lock();
+		try {
+			if (closed)
+				return;
+			closed = true;
+		} finally {
+			this.closing.writeLock().unlock();
+		}
+		try {
+			// no request can follow the marker, it waits for a free place when the queue is full
+			this.queue.put(STOP);
+			this.consumer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package it.polito.med;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered output to a file channel.
+ * Data is collected in a fixed direct buffer and written to the channel
+ * when the buffer is full, so memory does not depend on the output size.
+ */
+final class ChannelOutput implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final FileChannel channel;
+	private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private long written=0;
+
+	ChannelOutput(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	private void ensure(int n) throws IOException {
+		if (buf.remaining() < n)
+			flush();
+	}
+
+	void put(byte b) throws IOException {
+		ensure(1);
+		buf.put(b);
+	}
+
+	void putInt(int v) throws IOException {
+		ensure(4);
+		buf.putInt(v);
+	}
+
+	// unsigned LEB128 varint
+	void putVarInt(int v) throws IOException {
+		ensure(5);
+		while ((v & ~0x7F) != 0) {
+			buf.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		buf.put((byte) v);
+	}
+
+	void putBytes(byte[] b) throws IOException {
+		int off = 0;
+		while (off < b.length) {
+			ensure(1);
+			int n = Math.min(buf.remaining(), b.length-off);
+			buf.put(b, off, n);
+			off += n;
+		}
+	}
+
+	// UTF-8 string prefixed by its length in bytes
+	void putString(String s) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		putVarInt(b.length);
+		putBytes(b);
+	}
+
+	// UTF-8 text without length
+	void putText(String s) throws IOException {
+		putBytes(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// UTF-8 text without length, encoded char by char into the buffer;
+	// unpaired surrogates become '?' as with String.getBytes
+	void putChars(String s) throws IOException {
+		int n = s.length();
+		for (int i=0; i<n; i++) {
+			char c = s.charAt(i);
+			ensure(4);
+			if (c < 0x80) {
+				buf.put((byte) c);
+			} else if (c < 0x800) {
+				buf.put((byte) (0xC0 | c >> 6));
+				buf.put((byte) (0x80 | c & 0x3F));
+			} else if (!Character.isSurrogate(c)) {
+				buf.put((byte) (0xE0 | c >> 12));
+				buf.put((byte) (0x80 | c >> 6 & 0x3F));
+				buf.put((byte) (0x80 | c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i+1 < n && Character.isLowSurrogate(s.charAt(i+1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				buf.put((byte) (0xF0 | cp >> 18));
+				buf.put((byte) (0x80 | cp >> 12 & 0x3F));
+				buf.put((byte) (0x80 | cp >> 6 & 0x3F));
+				buf.put((byte) (0x80 | cp & 0x3F));
+			} else {
+				buf.put((byte) '?');
+			}
+		}
+	}
+
+	// non-negative number as ASCII decimal digits
+	void putDecimal(int v) throws IOException {
+		ensure(10);
+		int len = 1;
+		for (int t=v; t >= 10; t/=10)
+			len++;
+		int pos = buf.position();
+		for (int i=pos+len-1; i >= pos; i--) {
+			buf.put(i, (byte) ('0' + v%10));
+			v /= 10;
+		}
+		buf.position(pos+len);
+	}
+
+	// minutes from midnight as "hh:mm"
+	void putTime(int minutes) throws IOException {
+		ensure(5);
+		int h = minutes/60, m = minutes%60;
+		buf.put((byte) ('0' + h/10));
+		buf.put((byte) ('0' + h%10));
+		buf.put((byte) ':');
+		buf.put((byte) ('0' + m/10));
+		buf.put((byte) ('0' + m%10));
+	}
+
+	// number of bytes of the varint encoding of v
+	static int varIntSize(int v) {
+		int n = 1;
+		while ((v & ~0x7F) != 0) {
+			n++;
+			v >>>= 7;
+		}
+		return n;
+	}
+
+	static int zigZag(int v) {
+		return (v << 1) ^ (v >> 31);
+	}
+
+	void flush() throws IOException {
+		buf.flip();
+		while (buf.hasRemaining())
+			written += channel.write(buf);
+		buf.clear();
+	}
+
+	// bytes written to the channel so far
+	long written() {
+		return written;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package it.polito.med;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes appointments and schedule slots in a compact columnar file.
+ * 
+ * The file starts with the magic "MEDC" and a version, followed by blocks
+ * of at most {@value #BLOCK_ROWS} rows of the same table and an end marker:
+ * <pre>
+ * block := type:byte rows:varint
+ *          newDoctors:varint (id:string)*
+ *          newPatients:varint (ssn:string name:string surname:string)*
+ *          (columnBytes:varint column)*
+ * </pre>
+ * Doctor ids and patients are dictionary encoded: each block lists the
+ * entries first used in it, codes follow the order of first use across the file.
+ * A patient is an SSN with the names given in the booking, as in the store,
+ * so the same SSN booked under other names gets its own code.
+ * Columns are varints; ids, dates (epoch days) and times (minutes) are stored as
+ * zig-zag deltas from the previous row of the block.
+ * <ul>
+ * <li>appointments: id, doctor, patient, day, start, duration,
+ * flags (1 = accepted, 2 = no-show, 4 = completed)</li>
+ * <li>slots: doctor, day, start, duration, flags (1 = booked)</li>
+ * </ul>
+ * Only one block is buffered at a time, so memory is bounded by the block
+ * size plus the dictionaries.
+ */
+class ColumnarWriter implements Closeable {
+
+	static final int MAGIC = 0x4D454443;
+	// version 2 adds the no-show and completed flags of the appointments
+	static final int VERSION = 2;
+	static final byte END = 0;
+	static final byte APPOINTMENTS = 1;
+	static final byte SLOTS = 2;
+	static final int BLOCK_ROWS = 8192;
+	// flags of the appointments
+	static final int ACCEPTED=1, NO_SHOW=2, COMPLETED=4;
+
+	private static final boolean[] APPOINTMENT_DELTAS = {true, false, false, true, true, false, false};
+	private static final boolean[] SLOT_DELTAS = {false, true, true, false, false};
+
+	private final ChannelOutput out;
+	private final Map<String,Integer> doctors = new HashMap<>();
+	private final Map<String,Integer> patients = new HashMap<>();
+	private final List<String> newDoctors = new ArrayList<>();
+	private final List<String[]> newPatients = new ArrayList<>();
+
+	// pending block
+	private byte type = APPOINTMENTS;
+	private final int[][] columns = new int[APPOINTMENT_DELTAS.length][BLOCK_ROWS];
+	private int rows=0;
+	private long totalRows=0;
+
+	// last date converted to epoch day, rows come ordered by date
+	private String lastDate;
+	private int lastDay;
+
+	ColumnarWriter(Path file) throws IOException {
+		this.out = new ChannelOutput(file);
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+	}
+
+	void appointment(Exporter.AppointmentRows a, int i) throws IOException {
+		startRow(APPOINTMENTS);
+		int r = rows++;
+		columns[0][r] = a.ids[i];
+		columns[1][r] = doctorCode(a.doctors[i]);
+		columns[2][r] = patientCode(a.ssns[i], a.names[i], a.surnames[i]);
+		columns[3][r] = a.days[i];
+		columns[4][r] = a.starts[i];
+		columns[5][r] = a.ends[i] - a.starts[i];
+		columns[6][r] = a.flags[i];
+		endRow();
+	}
+
+	void slot(Exporter.SlotRows s, int i) throws IOException {
+		startRow(SLOTS);
+		int r = rows++;
+		columns[0][r] = doctorCode(s.doctors[i]);
+		columns[1][r] = epochDay(s.dates[i]);
+		columns[2][r] = s.starts[i];
+		columns[3][r] = s.ends[i] - s.starts[i];
+		columns[4][r] = s.booked[i] ? 1 : 0;
+		endRow();
+	}
+
+	// rows written so far
+	long rows() {
+		return totalRows + rows;
+	}
+
+	private void startRow(byte t) throws IOException {
+		if (t != type) {
+			writeBlock();
+			type = t;
+		}
+	}
+
+	private void endRow() throws IOException {
+		if (rows == BLOCK_ROWS)
+			writeBlock();
+	}
+
+	private int doctorCode(String id) {
+		Integer code = doctors.get(id);
+		if (code == null) {
+			code = doctors.size();
+			doctors.put(id, code);
+			newDoctors.add(id);
+		}
+		return code;
+	}
+
+	// patients are keyed as in the store, so the names given with each booking are kept
+	private int patientCode(String ssn, String name, String surname) {
+		String key = ssn.length() + ":" + ssn + name.length() + ":" + name + surname;
+		Integer code = patients.get(key);
+		if (code == null) {
+			code = patients.size();
+			patients.put(key, code);
+			newPatients.add(new String[] {ssn, name, surname});
+		}
+		return code;
+	}
+
+	private int epochDay(String date) {
+		if (!date.equals(lastDate)) {
+			lastDate = date;
+			lastDay = (int) LocalDate.parse(date).toEpochDay();
+		}
+		return lastDay;
+	}
+
+	private void writeBlock() throws IOException {
+		if (rows == 0)
+			return;
+		out.put(type);
+		out.putVarInt(rows);
+		out.putVarInt(newDoctors.size());
+		for (String d : newDoctors)
+			out.putString(d);
+		out.putVarInt(newPatients.size());
+		for (String[] p : newPatients) {
+			out.putString(p[0]);
+			out.putString(p[1] == null ? "" : p[1]);
+			out.putString(p[2] == null ? "" : p[2]);
+		}
+		newDoctors.clear();
+		newPatients.clear();
+
+		boolean[] deltas = type == APPOINTMENTS ? APPOINTMENT_DELTAS : SLOT_DELTAS;
+		for (int c=0; c<deltas.length; c++)
+			writeColumn(columns[c], deltas[c]);
+		totalRows += rows;
+		rows = 0;
+	}
+
+	private void writeColumn(int[] col, boolean delta) throws IOException {
+		// size first, so that readers can skip the column
+		int size = 0, prev = 0;
+		for (int r=0; r<rows; r++) {
+			size += ChannelOutput.varIntSize(delta ? ChannelOutput.zigZag(col[r]-prev) : col[r]);
+			prev = col[r];
+		}
+		out.putVarInt(size);
+		prev = 0;
+		for (int r=0; r<rows; r++) {
+			out.putVarInt(delta ? ChannelOutput.zigZag(col[r]-prev) : col[r]);
+			prev = col[r];
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			writeBlock();
+			out.put(END);
+		} finally {
+			out.close();
+		}
+	}
+}
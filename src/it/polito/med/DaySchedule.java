@@ -0,0 +1,124 @@
+package it.polito.med;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Schedule of a doctor on a single day.
+ * 
+ * Slots are kept in an interval index ordered by start time; since slots
+ * never overlap, the slot before a time and the one after it are enough
+ * to detect overlaps and to find the slot containing a time.
+ * A day can be made of several blocks with different slot durations.
+ */
+public class DaySchedule {
+
+	private String docID;
+	private String date;
+	// key start minute, value slot
+	private TreeMap<Integer,Slot> slots = new TreeMap<>();
+
+	public DaySchedule(String docID, String date) {
+		this.docID = docID;
+		this.date = date;
+	}
+
+	/**
+	 * adds a block of slots of the given duration between start and end;
+	 * a trailing interval shorter than the duration is not a slot.
+	 * The block is rejected if it overlaps any slot already in the day.
+	 * 
+	 * @return the number of slots added, 0 if the block is rejected
+	 */
+	public int addBlock(int start, int end, int duration) {
+		int n = Times.countSlots(start, end, duration);
+		if (duration <= 0 || start < 0 || n == 0)
+			return 0;
+		// the block actually ends with its last slot
+		int blockEnd = start + n*duration;
+		if (overlaps(start, blockEnd))
+			return 0;
+		for (int s=start; s<blockEnd; s+=duration)
+			this.slots.put(s, new Slot(docID, date, s, s+duration));
+		return n;
+	}
+
+	// adds an existing slot, e.g. a booked one of the day being replaced;
+	// the slot must not overlap the ones of the day
+	void addSlot(Slot s) {
+		this.slots.put(s.getStart(), s);
+	}
+
+	// this method checks if the interval [start,end) overlaps any slot of the day
+	public boolean overlaps(int start, int end) {
+		Map.Entry<Integer,Slot> before = this.slots.floorEntry(start);
+		if (before != null && before.getValue().getEnd() > start)
+			return true;
+		Map.Entry<Integer,Slot> after = this.slots.ceilingEntry(start);
+		return after != null && after.getKey() < end;
+	}
+
+	// slot containing the given minute, null if none
+	public Slot slotAt(int minute) {
+		Map.Entry<Integer,Slot> e = this.slots.floorEntry(minute);
+		if (e == null || !e.getValue().contains(minute))
+			return null;
+		return e.getValue();
+	}
+
+	// slot starting at the given minute, null if none
+	public Slot slotStarting(int minute) {
+		return this.slots.get(minute);
+	}
+
+	// slot described by a string "hh:mm-hh:mm", null if not in the schedule
+	public Slot getSlot(String slot) {
+		int sep = slot.indexOf('-');
+		if (sep < 0)
+			return null;
+		Slot s;
+		try {
+			s = this.slots.get(Times.toMinutes(slot.substring(0, sep)));
+		} catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+			return null;
+		}
+		return s != null && s.toString().equals(slot) ? s : null;
+	}
+
+	// visits the slots in time order
+	public void visit(SlotVisitor visitor) {
+		for (Slot s : this.slots.values())
+			visitor.visit(docID, s.getStart(), s.getEnd());
+	}
+
+	// slots starting in [start,end)
+	public Collection<Slot> slotsBetween(int start, int end) {
+		return this.slots.subMap(start, end).values();
+	}
+
+	public Collection<Slot> getSlots() {
+		return this.slots.values();
+	}
+
+	// slots in the format "hh:mm-hh:mm", ordered by time
+	public List<String> toStrings() {
+		List<String> res = new ArrayList<>(this.slots.size());
+		for (Slot s : this.slots.values())
+			res.add(s.toString());
+		return res;
+	}
+
+	public int size() {
+		return this.slots.size();
+	}
+
+	public String getDocID() {
+		return docID;
+	}
+	public String getDate() {
+		return date;
+	}
+}
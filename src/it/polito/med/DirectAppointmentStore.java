@@ -0,0 +1,109 @@
+package it.polito.med;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Appointment store keeping fixed size records outside of the heap,
+ * in direct buffers or in a memory-mapped file, so the garbage collector
+ * never scans them. Records are allocated in chunks that are never moved.
+ * <p>
+ * Record layout (native byte order): doctor int, patient int, epoch day int,
+ * start short, end short, flags byte, padding to 20 bytes.
+ */
+class DirectAppointmentStore extends AppointmentStore {
+
+	static final int RECORD = 20;
+	private static final int DOCTOR=0, PATIENT=4, DAY=8, START=12, END=14, FLAGS=16;
+	// records of a chunk, a power of two
+	static final int CHUNK_BITS = 16;
+	private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+	private static final long CHUNK_BYTES = (long) RECORD << CHUNK_BITS;
+
+	// backing file, null for direct buffers
+	private final Path file;
+	private final ArrayList<ByteBuffer> chunks = new ArrayList<>();
+
+	DirectAppointmentStore(Path file) {
+		this.file = file;
+	}
+
+	@Override
+	void ensureCapacity(int id) {
+		while ((id >>> CHUNK_BITS) >= this.chunks.size())
+			this.chunks.add(newChunk(this.chunks.size()).order(ByteOrder.nativeOrder()));
+	}
+
+	private ByteBuffer newChunk(int n) {
+		if (this.file == null)
+			return ByteBuffer.allocateDirect((int) CHUNK_BYTES);
+		// the mapping stays valid after the channel is closed
+		try (FileChannel ch = FileChannel.open(this.file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return ch.map(FileChannel.MapMode.READ_WRITE, n * CHUNK_BYTES, CHUNK_BYTES);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// absolute accesses only, so concurrent readers do not interfere
+	private ByteBuffer chunk(int id) {
+		return this.chunks.get(id >>> CHUNK_BITS);
+	}
+
+	private static int offset(int id) {
+		return (id & CHUNK_MASK) * RECORD;
+	}
+
+	@Override
+	void write(int id, int doctor, int patient, int epochDay, int startMinute, int endMinute, byte flags) {
+		ByteBuffer b = chunk(id);
+		int o = offset(id);
+		b.putInt(o+DOCTOR, doctor);
+		b.putInt(o+PATIENT, patient);
+		b.putInt(o+DAY, epochDay);
+		b.putShort(o+START, (short) startMinute);
+		b.putShort(o+END, (short) endMinute);
+		b.put(o+FLAGS, flags);
+	}
+
+	@Override
+	void writeFlags(int id, byte flags) {
+		chunk(id).put(offset(id)+FLAGS, flags);
+	}
+
+	@Override
+	int doctor(int id) {
+		return chunk(id).getInt(offset(id)+DOCTOR);
+	}
+
+	@Override
+	int patient(int id) {
+		return chunk(id).getInt(offset(id)+PATIENT);
+	}
+
+	@Override
+	int day(int id) {
+		return chunk(id).getInt(offset(id)+DAY);
+	}
+
+	@Override
+	int start(int id) {
+		return chunk(id).getShort(offset(id)+START);
+	}
+
+	@Override
+	int end(int id) {
+		return chunk(id).getShort(offset(id)+END);
+	}
+
+	@Override
+	byte flags(int id) {
+		return chunk(id).get(offset(id)+FLAGS);
+	}
+}
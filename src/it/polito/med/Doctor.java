@@ -1,7 +1,11 @@
 package it.polito.med;
 
-import java.util.Set;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
 
 public class Doctor {
 	
@@ -9,50 +13,258 @@ public class Doctor {
 	private String name;
 	private String surname;
 	private String speciality;
-	// collection for doctor slots, key date, value set of strings
-	private TreeMap<String,Set<String>> slots = new TreeMap<>();
+	// dense codes of the id and of the speciality, -1 if not registered in a med centre
+	private int code=-1;
+	private int specialityCode=-1;
+	// collection for doctor slots, key date, value schedule of the day
+	private TreeMap<String,DaySchedule> slots = new TreeMap<>();
+	// weekly recurring schedules, their days are materialised on first use
+	private List<ScheduleTemplate> templates = new ArrayList<>();
+	// days materialised from the templates, key date, value schedule of the day
+	private TreeMap<String,DaySchedule> templateDays = new TreeMap<>();
+	// dates where the templates do not apply
+	private TreeSet<String> exceptions = new TreeSet<>();
+	// notified when slots enter or leave the schedule
+	private ScheduleListener listener;
 	private int scheduledAppointments=0;
+	private int noShows=0;
 	private int totalSlots=0;
 	
 	public int getScheduledAppointments() {
 		return scheduledAppointments;
 	}
 
+	// slots of the explicit daily schedules plus the ones defined by the templates
 	public int getTotalSlots() {
-		return totalSlots;
+		long tot = totalSlots;
+		for (ScheduleTemplate t : this.templates)
+			tot += templateSlots(t, t.getFrom(), t.getTo());
+		return (int) tot;
+	}
+	
+	// number of slots in the schedule between the two dates (both included);
+	// days defined by the templates are counted without materialising them
+	public long countSlots(String from, String to) {
+		long tot = 0;
+		for (DaySchedule day : this.slots.subMap(from, true, to, true).values())
+			tot += day.size();
+		LocalDate f = LocalDate.parse(from), t = LocalDate.parse(to);
+		for (ScheduleTemplate tmp : this.templates)
+			tot += templateSlots(tmp, f, t);
+		return tot;
+	}
+	
+	// slots defined by a template between the two dates (both included)
+	private long templateSlots(ScheduleTemplate t, LocalDate from, LocalDate to) {
+		long days = t.countDays(from, to);
+		if (days == 0)
+			return 0;
+		// days covered by an explicit schedule or an exception do not use the template
+		String f = from.toString(), e = to.toString();
+		for (String date : this.slots.subMap(f, true, e, true).keySet())
+			if (t.appliesTo(LocalDate.parse(date)) && !this.exceptions.contains(date))
+				days--;
+		for (String date : this.exceptions.subSet(f, true, e, true))
+			if (t.appliesTo(LocalDate.parse(date)))
+				days--;
+		return days * t.slotsPerDay();
 	}
 
 	public void updScheduledApp() {
 		this.scheduledAppointments++;
 	}
 	
+	public void decScheduledApp() {
+		this.scheduledAppointments--;
+	}
+	
+	public int getNoShows() {
+		return noShows;
+	}
+	
+	public void updNoShows() {
+		this.noShows++;
+	}
+	
+	public void decNoShows() {
+		this.noShows--;
+	}
+	
 	public void updTotSlots(int n) {
 		this.totalSlots+=n;
 	}
 	
 	// this method returns the total number of slots in the schedule for a given date
 	public int getTotNoSlotsPerDate(String date) {
-		if (this.slots.get(date)==null)
-		{
-			System.out.println("no slots for "+this.id);
+		DaySchedule day = getSlotsPerDate(date);
+		if (day==null)
 			return -1;
-		}
-		return this.slots.get(date).size();
+		return day.size();
 	}
 	// this method checks if the doctor is available for a specific date
 	public boolean hasDate(String date) {
-		return this.slots.containsKey(date);
+		if (this.slots.containsKey(date) || this.templateDays.containsKey(date))
+			return true;
+		if (this.templates.isEmpty() || this.exceptions.contains(date))
+			return false;
+		LocalDate d = LocalDate.parse(date);
+		return this.templates.stream().anyMatch(t->t.appliesTo(d));
+	}
+	// this method gives the schedule of a specific date,
+	// days defined by the templates are materialised here
+	public DaySchedule getSlotsPerDate(String date){
+		DaySchedule day = this.slots.get(date);
+		if (day != null)
+			return day;
+		day = this.templateDays.get(date);
+		if (day != null || !hasDate(date))
+			return day;
+		
+		DaySchedule materialised = buildTemplateDay(date);
+		this.templateDays.put(date, materialised);
+		if (this.listener != null)
+			this.listener.slotsAdded(materialised.getSlots());
+		return materialised;
+	}
+	
+	// schedule of a date built from the templates
+	private DaySchedule buildTemplateDay(String date) {
+		LocalDate d = LocalDate.parse(date);
+		DaySchedule day = new DaySchedule(this.id, date);
+		for (ScheduleTemplate t : this.templates)
+			if (t.appliesTo(d))
+				t.addTo(day);
+		return day;
+	}
+	
+	// calls the action on each day of the schedule in date order;
+	// days of the templates not used yet are built on the fly and not kept
+	public void forEachDay(BiConsumer<String,DaySchedule> action) {
+		TreeSet<String> dates = new TreeSet<>(this.slots.keySet());
+		dates.addAll(this.templateDays.keySet());
+		for (ScheduleTemplate t : this.templates)
+			t.forEachDate(d->dates.add(d.toString()));
+		for (String date : dates) {
+			DaySchedule day = this.slots.get(date);
+			if (day == null)
+				day = this.templateDays.get(date);
+			if (day == null) {
+				if (this.exceptions.contains(date))
+					continue;
+				day = buildTemplateDay(date);
+			}
+			action.accept(date, day);
+		}
+	}
+	// this method adds a block of slots to the explicit schedule of a date,
+	// an explicit schedule replaces the one of the templates but keeps its booked slots
+	public int addBlock(String date, int start, int end, int duration) {
+		DaySchedule day = this.slots.get(date);
+		DaySchedule replaced = null;
+		int kept = 0;
+		if (day == null) {
+			day = new DaySchedule(this.id, date);
+			replaced = this.templateDays.get(date);
+			if (replaced != null)
+				for (Slot s : replaced.getSlots())
+					if (!s.isFree()) {
+						day.addSlot(s);
+						kept++;
+					}
+		}
+		// the block is rejected if it overlaps a booked slot of the templates
+		int n = day.addBlock(start, end, duration);
+		if (n == 0)
+			return 0;
+		if (!this.slots.containsKey(date)) {
+			this.slots.put(date, day);
+			if (replaced != null) {
+				this.templateDays.remove(date);
+				// the booked slots are not among the free ones anyway
+				if (this.listener != null)
+					this.listener.slotsRemoved(replaced.getSlots());
+			}
+		}
+		if (this.listener != null)
+			this.listener.slotsAdded(day.slotsBetween(start, start + n*duration));
+		updTotSlots(n + kept);
+		return n;
+	}
+	
+	// this method checks if a template would overlap the hours of another one on some day
+	public boolean overlapsTemplate(ScheduleTemplate t) {
+		return this.templates.stream().anyMatch(o->o.overlaps(t));
 	}
-	// this method gives the set of slots with a specific date
-	public Set<String> getSlotsPerDate(String date){
-		return this.slots.get(date);
+	
+	public void addTemplate(ScheduleTemplate t) {
+		this.templates.add(t);
+		// days already materialised must include the new slots
+		String from = t.getFrom().toString(), to = t.getTo().toString();
+		for (DaySchedule day : this.templateDays.subMap(from, true, to, true).values())
+			if (t.appliesTo(LocalDate.parse(day.getDate()))) {
+				int n = t.addTo(day);
+				if (n > 0 && this.listener != null)
+					this.listener.slotsAdded(day.slotsBetween(t.getStart(), t.getStart() + n*t.getDuration()));
+			}
 	}
-	// this method adds a entry into the doc's slots map 
-	public void addSlot(String date, Set<String> slots) {
-		this.slots.put(date, slots);
+	
+	// the templates do not apply on the given date anymore;
+	// false if slots of the templates are already booked on that date
+	public boolean addException(String date) {
+		DaySchedule day = this.templateDays.get(date);
+		if (day != null && hasBookings(day))
+			return false;
+		this.exceptions.add(date);
+		this.templateDays.remove(date);
+		if (day != null && this.listener != null)
+			this.listener.slotsRemoved(day.getSlots());
+		return true;
+	}
+	
+	private static boolean hasBookings(DaySchedule day) {
+		for (Slot s : day.getSlots())
+			if (!s.isFree())
+				return true;
+		return false;
+	}
+	
+	// first date from the given one where the templates apply and
+	// the day has not been materialised yet, null if none.
+	// Scans starting at the watermark of a template move it forward,
+	// so the dates already used are skipped once
+	public String nextTemplateDate(String from) {
+		LocalDate start = LocalDate.parse(from);
+		String res = null;
+		for (ScheduleTemplate t : this.templates) {
+			LocalDate open = t.getOpen();
+			boolean fromOpen = !start.isAfter(open);
+			LocalDate d = fromOpen ? open : t.firstDate(start);
+			for (; !d.isAfter(t.getTo()); d=d.plusWeeks(1)) {
+				String date = d.toString();
+				if (res != null && date.compareTo(res) >= 0)
+					break;
+				if (!this.slots.containsKey(date) && !this.templateDays.containsKey(date)
+						&& !this.exceptions.contains(date)) {
+					res = date;
+					break;
+				}
+			}
+			// the dates between the watermark and d have a schedule
+			if (fromOpen)
+				t.setOpen(d);
+		}
+		return res;
 	}
 	
-	public TreeMap<String,Set<String>> getSlotsMap(){
+	void setListener(ScheduleListener listener) {
+		this.listener = listener;
+	}
+	
+	public List<ScheduleTemplate> getTemplates(){
+		return this.templates;
+	}
+	
+	public TreeMap<String,DaySchedule> getSlotsMap(){
 		return this.slots;
 	}
 	
@@ -91,5 +303,19 @@ public class Doctor {
 		
 	}
 	
+	Doctor(String id, String name, String surname, String speciality, int code, int specialityCode) {
+		this(id, name, surname, speciality);
+		this.code = code;
+		this.specialityCode = specialityCode;
+	}
+	
+	int getCode() {
+		return code;
+	}
+	
+	int getSpecialityCode() {
+		return specialityCode;
+	}
+	
 	
 }
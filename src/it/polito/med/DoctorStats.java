@@ -0,0 +1,42 @@
+package it.polito.med;
+
+/**
+ * Activity of a doctor over a range of dates.
+ */
+class DoctorStats {
+
+	final Doctor doctor;
+	// booked appointments
+	final long appointments;
+	// appointments whose patient has been accepted
+	final long accepted;
+	// appointments marked as no-show
+	final long noShows;
+	// slots in the schedule
+	final long slots;
+
+	DoctorStats(Doctor doctor, long appointments, long accepted, long noShows, long slots) {
+		this.doctor = doctor;
+		this.appointments = appointments;
+		this.accepted = accepted;
+		this.noShows = noShows;
+		this.slots = slots;
+	}
+
+	String id() {
+		return doctor.getId();
+	}
+
+	// appointments with an outcome, the patient either came or was marked as no-show
+	long concluded() {
+		return accepted + noShows;
+	}
+
+	double noShowRate() {
+		return (double) noShows/concluded();
+	}
+
+	long idleSlots() {
+		return Math.max(0, slots - appointments);
+	}
+}
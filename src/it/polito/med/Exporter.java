@@ -0,0 +1,185 @@
+package it.polito.med;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.PrimitiveIterator;
+
+/**
+ * Streams appointments and schedules to CSV or columnar files.
+ * Rows are first copied into flat arrays while the manager is locked,
+ * {@link AppointmentRows} and {@link SlotRows}, then written through a
+ * {@link ChannelOutput} once the lock is released, so bookings are only
+ * held up by the copy and not by the file I/O.
+ * CSV fields are encoded straight into the output buffer, so no object
+ * is created for each row.
+ */
+final class Exporter {
+
+	private Exporter() {}
+
+	static final String APPOINTMENTS_HEADER = "id,doctor,ssn,name,surname,date,start,end,accepted,noShow,completed\n";
+	static final String SLOTS_HEADER = "doctor,date,start,end,booked\n";
+
+	private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Appointments copied from the store, in the order of the ids given.
+	 * Strings are shared with the store, so a row takes some 40 bytes.
+	 * Flags are the ones of the columnar file.
+	 */
+	static final class AppointmentRows {
+		final int size;
+		final int[] ids, days, starts, ends, flags;
+		final String[] doctors, ssns, names, surnames;
+
+		// to be called under the lock of the manager
+		AppointmentRows(AppointmentStore store, PrimitiveIterator.OfInt it, int expected) {
+			int[] ids = new int[expected];
+			int n = 0;
+			while (it.hasNext()) {
+				if (n == ids.length)
+					ids = Arrays.copyOf(ids, n*2+1);
+				ids[n++] = it.nextInt();
+			}
+			this.size = n;
+			this.ids = ids;
+			this.days = new int[n];
+			this.starts = new int[n];
+			this.ends = new int[n];
+			this.flags = new int[n];
+			this.doctors = new String[n];
+			this.ssns = new String[n];
+			this.names = new String[n];
+			this.surnames = new String[n];
+			for (int r=0; r<n; r++) {
+				int id = ids[r];
+				days[r] = store.day(id);
+				starts[r] = store.start(id);
+				ends[r] = store.end(id);
+				flags[r] = (store.is(id, AppointmentStore.ACCEPTED) ? ColumnarWriter.ACCEPTED : 0)
+						| (store.is(id, AppointmentStore.NO_SHOW) ? ColumnarWriter.NO_SHOW : 0)
+						| (store.is(id, AppointmentStore.COMPLETED) ? ColumnarWriter.COMPLETED : 0);
+				doctors[r] = store.docID(id);
+				ssns[r] = store.ssn(id);
+				names[r] = store.name(id);
+				surnames[r] = store.surname(id);
+			}
+		}
+	}
+
+	/**
+	 * Slots of the doctors, in doctor and date order.
+	 * Days of the weekly schedules not used yet are built while copying and not kept.
+	 */
+	static final class SlotRows {
+		final int size;
+		final String[] doctors, dates;
+		final int[] starts, ends;
+		final boolean[] booked;
+
+		// to be called under the lock of the manager
+		SlotRows(Collection<Doctor> doctorsColl) {
+			ArrayList<Slot> slots = new ArrayList<>();
+			for (Doctor d : doctorsColl)
+				d.forEachDay((date, day)->slots.addAll(day.getSlots()));
+			int n = slots.size();
+			this.size = n;
+			this.doctors = new String[n];
+			this.dates = new String[n];
+			this.starts = new int[n];
+			this.ends = new int[n];
+			this.booked = new boolean[n];
+			for (int r=0; r<n; r++) {
+				Slot s = slots.get(r);
+				doctors[r] = s.getDocID();
+				dates[r] = s.getDate();
+				starts[r] = s.getStart();
+				ends[r] = s.getEnd();
+				booked[r] = !s.isFree();
+			}
+		}
+	}
+
+	static long appointmentsCsv(AppointmentRows a, Path file) throws IOException {
+		// rows come ordered by date, the text of a date is built once
+		int lastDay = Integer.MIN_VALUE;
+		String date = null;
+		try (ChannelOutput out = new ChannelOutput(file)) {
+			out.putText(APPOINTMENTS_HEADER);
+			for (int r=0; r<a.size; r++) {
+				if (a.days[r] != lastDay) {
+					lastDay = a.days[r];
+					date = LocalDate.ofEpochDay(lastDay).toString();
+				}
+				out.putDecimal(a.ids[r]);
+				out.put((byte) ',');
+				csv(out, a.doctors[r]);
+				csv(out, a.ssns[r]);
+				csv(out, a.names[r]);
+				csv(out, a.surnames[r]);
+				out.putChars(date);
+				out.put((byte) ',');
+				out.putTime(a.starts[r]);
+				out.put((byte) ',');
+				out.putTime(a.ends[r]);
+				out.put((byte) ',');
+				out.putBytes((a.flags[r] & ColumnarWriter.ACCEPTED) != 0 ? TRUE : FALSE);
+				out.put((byte) ',');
+				out.putBytes((a.flags[r] & ColumnarWriter.NO_SHOW) != 0 ? TRUE : FALSE);
+				out.put((byte) ',');
+				out.putBytes((a.flags[r] & ColumnarWriter.COMPLETED) != 0 ? TRUE : FALSE);
+				out.put((byte) '\n');
+			}
+		}
+		return a.size;
+	}
+
+	static long schedulesCsv(SlotRows s, Path file) throws IOException {
+		try (ChannelOutput out = new ChannelOutput(file)) {
+			out.putText(SLOTS_HEADER);
+			for (int r=0; r<s.size; r++) {
+				csv(out, s.doctors[r]);
+				out.putChars(s.dates[r]);
+				out.put((byte) ',');
+				out.putTime(s.starts[r]);
+				out.put((byte) ',');
+				out.putTime(s.ends[r]);
+				out.put((byte) ',');
+				out.putBytes(s.booked[r] ? TRUE : FALSE);
+				out.put((byte) '\n');
+			}
+		}
+		return s.size;
+	}
+
+	static long columnar(AppointmentRows a, SlotRows s, Path file) throws IOException {
+		try (ColumnarWriter w = new ColumnarWriter(file)) {
+			for (int r=0; r<a.size; r++)
+				w.appointment(a, r);
+			for (int r=0; r<s.size; r++)
+				w.slot(s, r);
+			return w.rows();
+		}
+	}
+
+	// writes a CSV field followed by the separator, quoted when needed (RFC 4180)
+	private static void csv(ChannelOutput out, String field) throws IOException {
+		if (field != null) {
+			if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0)
+				out.putChars(field);
+			else {
+				// rare, the quoted copy is allocated
+				out.put((byte) '"');
+				out.putChars(field.replace("\"", "\"\""));
+				out.put((byte) '"');
+			}
+		}
+		out.put((byte) ',');
+	}
+}
@@ -0,0 +1,77 @@
+package it.polito.med;
+
+import java.util.Arrays;
+
+/**
+ * Appointment store keeping each column in a primitive array on the heap;
+ * an appointment takes 17 bytes.
+ */
+class HeapAppointmentStore extends AppointmentStore {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private int[] doctor = new int[INITIAL_CAPACITY];
+	private int[] patient = new int[INITIAL_CAPACITY];
+	private int[] day = new int[INITIAL_CAPACITY];
+	private short[] start = new short[INITIAL_CAPACITY];
+	private short[] end = new short[INITIAL_CAPACITY];
+	private byte[] flags = new byte[INITIAL_CAPACITY];
+
+	@Override
+	void ensureCapacity(int id) {
+		if (id < this.flags.length)
+			return;
+		int capacity = Math.max(this.flags.length * 2, id + 1);
+		this.doctor = Arrays.copyOf(this.doctor, capacity);
+		this.patient = Arrays.copyOf(this.patient, capacity);
+		this.day = Arrays.copyOf(this.day, capacity);
+		this.start = Arrays.copyOf(this.start, capacity);
+		this.end = Arrays.copyOf(this.end, capacity);
+		this.flags = Arrays.copyOf(this.flags, capacity);
+	}
+
+	@Override
+	void write(int id, int doctor, int patient, int epochDay, int startMinute, int endMinute, byte flags) {
+		this.doctor[id] = doctor;
+		this.patient[id] = patient;
+		this.day[id] = epochDay;
+		this.start[id] = (short) startMinute;
+		this.end[id] = (short) endMinute;
+		this.flags[id] = flags;
+	}
+
+	@Override
+	void writeFlags(int id, byte flags) {
+		this.flags[id] = flags;
+	}
+
+	@Override
+	int doctor(int id) {
+		return this.doctor[id];
+	}
+
+	@Override
+	int patient(int id) {
+		return this.patient[id];
+	}
+
+	@Override
+	int day(int id) {
+		return this.day[id];
+	}
+
+	@Override
+	int start(int id) {
+		return this.start[id];
+	}
+
+	@Override
+	int end(int id) {
+		return this.end[id];
+	}
+
+	@Override
+	byte flags(int id) {
+		return this.flags[id];
+	}
+}
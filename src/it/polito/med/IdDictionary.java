@@ -0,0 +1,38 @@
+package it.polito.med;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Dense int codes for string ids, assigned from 0 in order of first use.
+ */
+class IdDictionary {
+
+	private final HashMap<String,Integer> codes = new HashMap<>();
+	private final ArrayList<String> values = new ArrayList<>();
+
+	// code of the value, a new one if the value is not known yet
+	int code(String value) {
+		Integer c = this.codes.get(value);
+		if (c == null) {
+			c = this.values.size();
+			this.codes.put(value, c);
+			this.values.add(value);
+		}
+		return c;
+	}
+
+	// code of the value, -1 if the value is not known
+	int find(String value) {
+		Integer c = this.codes.get(value);
+		return c == null ? -1 : c;
+	}
+
+	String value(int code) {
+		return this.values.get(code);
+	}
+
+	int size() {
+		return this.values.size();
+	}
+}
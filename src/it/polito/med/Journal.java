@@ -0,0 +1,246 @@
+package it.polito.med;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ordered log of the mutations applied to a med centre.
+ * Mutations are recorded with their arguments once they succeed, so a replica
+ * replaying the log from the same starting point reaches the same state.
+ * <p>
+ * Only the latest entries are kept in memory: when they reach the capacity a
+ * background thread checkpoints the older half to a file and drops it, so a long
+ * running primary holds a bounded journal and followers far behind catch up from
+ * the file. Appending never waits for the disk: entries keep arriving while the
+ * checkpoint is written, so the capacity is exceeded by what is appended meanwhile.
+ * If the file cannot be written the entries stay in memory and the failure
+ * is reported by {@link #checkpointFailure()}.
+ */
+class Journal {
+
+	enum Op {
+		SPECIALITIES, DOCTOR, DAILY_SCHEDULE, WEEKLY_SCHEDULE, SCHEDULE_EXCEPTION,
+		APPOINTMENT, BOOK_EARLIEST, CANCEL, RESCHEDULE, JOIN_WAITLIST, LEAVE_WAITLIST,
+		CURRENT_DATE, ACCEPT, COMPLETE, NO_SHOWS
+	}
+
+	static final class Entry {
+		// position in the log, from 1
+		final long seq;
+		final Op op;
+		final String[] args;
+
+		Entry(long seq, Op op, String[] args) {
+			this.seq = seq;
+			this.op = op;
+			this.args = args;
+		}
+
+		void write(DataOutput out) throws IOException {
+			out.writeLong(seq);
+			out.writeByte(op.ordinal());
+			out.writeShort(args.length);
+			for (String a : args) {
+				out.writeBoolean(a != null);
+				if (a != null)
+					out.writeUTF(a);
+			}
+		}
+
+		static Entry read(DataInput in) throws IOException {
+			long seq = in.readLong();
+			Op op = Op.values()[in.readByte()];
+			String[] args = new String[in.readShort()];
+			for (int i=0; i<args.length; i++)
+				args[i] = in.readBoolean() ? in.readUTF() : null;
+			return new Entry(seq, op, args);
+		}
+	}
+
+	static final int DEFAULT_CAPACITY = 1 << 16;
+	// one offset of the checkpoint every so many entries
+	private static final int STRIDE = 1024;
+
+	// no-show clock of the med centre when the log started, epoch minutes
+	private final long origin;
+	private final int capacity;
+	// latest entries, the first one has sequence number base
+	private final ArrayList<Entry> entries = new ArrayList<>();
+	private long base=1;
+	// a checkpoint is due, the writer thread is started with the first one
+	private boolean checkpointDue=false;
+	private Thread writer;
+	// older entries, created at the first checkpoint; the fields of the
+	// checkpoint are only changed by the writer, and published under the lock
+	private Path checkpoint;
+	private long checkpointSize=0;
+	// offsets in the checkpoint of the entries 1, 1+STRIDE, 1+2*STRIDE...
+	private long[] offsets = new long[16];
+	private int indexed=0;
+	private IOException checkpointFailure;
+
+	Journal(long origin) {
+		this(origin, DEFAULT_CAPACITY);
+	}
+
+	Journal(long origin, int capacity) {
+		if (capacity < 2)
+			throw new IllegalArgumentException("capacity must be at least 2");
+		this.origin = origin;
+		this.capacity = capacity;
+	}
+
+	long origin() {
+		return origin;
+	}
+
+	synchronized void append(Op op, String... args) {
+		this.entries.add(new Entry(head()+1, op, args));
+		if (this.entries.size() >= this.capacity && this.checkpointFailure == null && !this.checkpointDue) {
+			this.checkpointDue = true;
+			if (this.writer == null) {
+				this.writer = new Thread(this::writeCheckpoints, "journal-checkpoint");
+				this.writer.setDaemon(true);
+				this.writer.start();
+			}
+		}
+		notifyAll();
+	}
+
+	// body of the writer thread: moves the oldest entries to the checkpoint file when due
+	private void writeCheckpoints() {
+		while (true) {
+			List<Entry> batch;
+			synchronized (this) {
+				try {
+					while (!this.checkpointDue)
+						wait();
+				} catch (InterruptedException e) {
+					return;
+				}
+				batch = new ArrayList<>(this.entries.subList(0, this.capacity/2));
+			}
+			try {
+				checkpoint(batch);
+			} catch (IOException e) {
+				synchronized (this) {
+					this.checkpointFailure = e;
+					this.checkpointDue = false;
+				}
+				return;
+			}
+		}
+	}
+
+	// writes the entries, the oldest ones in memory, to the file and drops them from memory
+	private void checkpoint(List<Entry> batch) throws IOException {
+		if (this.checkpoint == null) {
+			Path file = Files.createTempFile("med-journal", ".bin");
+			file.toFile().deleteOnExit();
+			synchronized (this) {
+				this.checkpoint = file;
+			}
+		}
+		ByteArrayOutputStream buf = new ByteArrayOutputStream(batch.size()*64);
+		DataOutputStream out = new DataOutputStream(buf);
+		// readers only look at the offsets already published
+		long[] index = this.offsets;
+		int indexed = this.indexed;
+		for (Entry e : batch) {
+			if ((e.seq-1) % STRIDE == 0) {
+				if (indexed == index.length)
+					index = Arrays.copyOf(index, indexed*2);
+				index[indexed++] = this.checkpointSize + buf.size();
+			}
+			e.write(out);
+		}
+		try (FileChannel ch = FileChannel.open(this.checkpoint, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			ByteBuffer bytes = ByteBuffer.wrap(buf.toByteArray());
+			while (bytes.hasRemaining())
+				ch.write(bytes);
+		}
+		// the entries are dropped only once they are in the file
+		synchronized (this) {
+			this.checkpointSize += buf.size();
+			this.offsets = index;
+			this.indexed = indexed;
+			this.entries.subList(0, batch.size()).clear();
+			this.base += batch.size();
+			// more may have been appended meanwhile
+			this.checkpointDue = this.entries.size() >= this.capacity;
+		}
+	}
+
+	// failure writing the checkpoint, null if none
+	synchronized IOException checkpointFailure() {
+		return this.checkpointFailure;
+	}
+
+	// number of entries kept in memory
+	synchronized int size() {
+		return this.entries.size();
+	}
+
+	// sequence number of the last entry, 0 if the log is empty
+	synchronized long head() {
+		return this.base - 1 + this.entries.size();
+	}
+
+	// up to max entries following the given sequence number,
+	// waiting up to the timeout when there are none yet
+	List<Entry> after(long seq, int max, long timeoutMillis) throws InterruptedException {
+		Path file;
+		long offset;
+		int n;
+		synchronized (this) {
+			if (seq+1 >= this.base) {
+				long deadline = System.currentTimeMillis() + timeoutMillis;
+				long wait;
+				while (head() <= seq && (wait = deadline - System.currentTimeMillis()) > 0)
+					wait(wait);
+				// a checkpoint may have happened while waiting
+				if (seq+1 >= this.base) {
+					int from = (int) (seq+1 - this.base), to = (int) Math.min(this.entries.size(), from + (long) max);
+					return from >= to ? List.of() : new ArrayList<>(this.entries.subList(from, to));
+				}
+			}
+			// the entries are in the file, which is only appended to: read it without the lock
+			int i = (int) (seq / STRIDE);
+			file = this.checkpoint;
+			offset = this.offsets[i];
+			n = (int) Math.min(max, this.base - 1 - seq);
+		}
+		return readCheckpoint(file, offset, seq, n);
+	}
+
+	// n entries following seq from the checkpoint, reading from an offset before them
+	private static List<Entry> readCheckpoint(Path file, long offset, long seq, int n) {
+		List<Entry> res = new ArrayList<>(n);
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch.position(offset))));
+			while (res.size() < n) {
+				Entry e = Entry.read(in);
+				if (e.seq > seq)
+					res.add(e);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("journal checkpoint unreadable", e);
+		}
+		return res;
+	}
+}
@@ -0,0 +1,132 @@
+package it.polito.med;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal streaming JSON writer over a pre-sized buffer; commas are placed
+ * automatically between the members of objects and arrays.
+ */
+class JsonWriter {
+
+	private final StringBuilder sb;
+	// whether the current object or array already has a member, one bit per level
+	private long hasMember=0;
+	private int depth=0;
+	// a member name has just been written, its value follows without comma
+	private boolean afterName=false;
+
+	JsonWriter(int capacity) {
+		this.sb = new StringBuilder(capacity);
+	}
+
+	JsonWriter beginObject() {
+		separator();
+		sb.append('{');
+		return push();
+	}
+
+	JsonWriter endObject() {
+		depth--;
+		sb.append('}');
+		return this;
+	}
+
+	JsonWriter beginArray() {
+		separator();
+		sb.append('[');
+		return push();
+	}
+
+	JsonWriter endArray() {
+		depth--;
+		sb.append(']');
+		return this;
+	}
+
+	JsonWriter name(String name) {
+		separator();
+		string(name);
+		sb.append(':');
+		afterName = true;
+		return this;
+	}
+
+	JsonWriter value(String value) {
+		separator();
+		if (value == null)
+			sb.append("null");
+		else
+			string(value);
+		return this;
+	}
+
+	JsonWriter value(long value) {
+		separator();
+		sb.append(value);
+		return this;
+	}
+
+	// NaN and infinities are not valid JSON numbers, they are written as null
+	JsonWriter value(double value) {
+		separator();
+		if (Double.isFinite(value))
+			sb.append(value);
+		else
+			sb.append("null");
+		return this;
+	}
+
+	JsonWriter value(boolean value) {
+		separator();
+		sb.append(value);
+		return this;
+	}
+
+	byte[] toBytes() {
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return sb.toString();
+	}
+
+	private JsonWriter push() {
+		depth++;
+		hasMember &= ~(1L << depth);
+		return this;
+	}
+
+	private void separator() {
+		if (afterName) {
+			afterName = false;
+			return;
+		}
+		if (depth == 0)
+			return;
+		long bit = 1L << depth;
+		if ((hasMember & bit) != 0)
+			sb.append(',');
+		hasMember |= bit;
+	}
+
+	private void string(String s) {
+		sb.append('"');
+		for (int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default:
+				if (c < 0x20)
+					sb.append(String.format("\\u%04x", (int) c));
+				else
+					sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+}
@@ -0,0 +1,165 @@
+package it.polito.med;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the med centre operations.
+ * They are disabled by default: enable them by name in the recording settings,
+ * e.g. {@code jfr configure it.polito.med.SetAppointment#enabled=true}.
+ * While disabled an event costs a few instructions, its object is not even allocated
+ * once the code is compiled. The duration covers the operation inside the lock
+ * of the manager; waits for the lock are the JDK monitor events of the same thread.
+ */
+final class MedEvents {
+
+	private MedEvents() {}
+
+	@Name("it.polito.med.SetAppointment")
+	@Label("Set Appointment")
+	@Category({"Med Centre", "Booking"})
+	@Enabled(false)
+	@StackTrace(false)
+	static class SetAppointment extends Event {
+		@Label("Doctor")
+		String doctor;
+		@Label("Date")
+		String date;
+		@Label("Slot")
+		String slot;
+		@Label("Appointment")
+		@Description("Id of the appointment, null if the booking was rejected")
+		String appointment;
+
+		void done(String doctor, String date, String slot, String appointment) {
+			if (!shouldCommit())
+				return;
+			this.doctor = doctor;
+			this.date = date;
+			this.slot = slot;
+			this.appointment = appointment;
+			commit();
+		}
+	}
+
+	@Name("it.polito.med.Accept")
+	@Label("Accept Patient")
+	@Category({"Med Centre", "Reception"})
+	@Enabled(false)
+	@StackTrace(false)
+	static class Accept extends Event {
+		@Label("Date")
+		String date;
+		@Label("Accepted")
+		@Description("Appointments of the patient accepted for the date")
+		int accepted;
+
+		void done(String date, int accepted) {
+			if (!shouldCommit())
+				return;
+			this.date = date;
+			this.accepted = accepted;
+			commit();
+		}
+	}
+
+	@Name("it.polito.med.NextAppointment")
+	@Label("Next Appointment")
+	@Category({"Med Centre", "Reception"})
+	@Enabled(false)
+	@StackTrace(false)
+	static class NextAppointment extends Event {
+		@Label("Doctor")
+		String doctor;
+		@Label("Appointment")
+		@Description("Id of the next appointment, null if none")
+		String appointment;
+
+		void done(String doctor, String appointment) {
+			if (!shouldCommit())
+				return;
+			this.doctor = doctor;
+			this.appointment = appointment;
+			commit();
+		}
+	}
+
+	@Name("it.polito.med.CompleteAppointment")
+	@Label("Complete Appointment")
+	@Category({"Med Centre", "Reception"})
+	@Enabled(false)
+	@StackTrace(false)
+	static class CompleteAppointment extends Event {
+		@Label("Doctor")
+		String doctor;
+		@Label("Appointment")
+		String appointment;
+		@Label("Completed")
+		@Description("False if the request was rejected")
+		boolean completed;
+
+		void done(String doctor, String appointment, boolean completed) {
+			if (!shouldCommit())
+				return;
+			this.doctor = doctor;
+			this.appointment = appointment;
+			this.completed = completed;
+			commit();
+		}
+	}
+
+	@Name("it.polito.med.FindSlots")
+	@Label("Find Slots")
+	@Category({"Med Centre", "Schedule"})
+	@Enabled(false)
+	@StackTrace(false)
+	static class FindSlots extends Event {
+		@Label("Date")
+		String date;
+		@Label("Speciality")
+		String speciality;
+		@Label("Doctors")
+		int doctors;
+		@Label("Slots")
+		int slots;
+
+		void done(String date, String speciality, int doctors, int slots) {
+			if (!shouldCommit())
+				return;
+			this.date = date;
+			this.speciality = speciality;
+			this.doctors = doctors;
+			this.slots = slots;
+			commit();
+		}
+	}
+
+	@Name("it.polito.med.DailySchedule")
+	@Label("Add Daily Schedule")
+	@Category({"Med Centre", "Schedule"})
+	@Enabled(false)
+	@StackTrace(false)
+	static class DailySchedule extends Event {
+		@Label("Doctor")
+		String doctor;
+		@Label("Date")
+		String date;
+		@Label("Slots")
+		@Description("Slots defined, 0 if the block was rejected")
+		int slots;
+
+		void done(String doctor, String date, int slots) {
+			if (!shouldCommit())
+				return;
+			this.doctor = doctor;
+			this.date = date;
+			this.slots = slots;
+			commit();
+		}
+	}
+}
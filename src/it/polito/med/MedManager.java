@@ -1,27 +1,96 @@
 package it.polito.med;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Facade of the med centre.
+ * All the operations are synchronized on the manager, so it can be
+ * shared by several threads; each operation is atomic.
+ */
 public class MedManager {
 
-	// specialities collection
-	private TreeSet<String> specialitiesColl = new TreeSet<>();
+	// specialities, dense codes in order of addition
+	private final IdDictionary specialityCodes = new IdDictionary();
+	// sorted snapshot of the specialities handed out to the callers
+	private List<String> specialitiesView = List.of();
 	// doctors collection
 	private TreeMap<String,Doctor> doctorsColl = new TreeMap<>();
-	// appointments collection
-	private TreeMap<String,Appointment> appColl = new TreeMap<>();
+	// doctors by code, the code of the doctor column of the appointment store
+	private final ArrayList<Doctor> doctorsByCode = new ArrayList<>();
+	// codes of the doctors of each speciality ordered by id (index=speciality code)
+	private final ArrayList<int[]> doctorsPerSpec = new ArrayList<>();
+	// appointments collection, columnar and addressed by the numeric id
+	private final AppointmentStore appStore;
+	// appointments ordered by date and time, centre-wide and for each doctor (key=docID)
+	private final AppointmentIndex appIndex;
+	private TreeMap<String,AppointmentIndex> appIndexPerDoc = new TreeMap<>();
+	// appointments of each patient ordered by date (key=ssn)
+	private final PatientIndex appIndexPerPatient;
 	// accepted appointments for each doctor coll --> map key=docID value=Set of appointments accepted
 	private TreeMap<String,TreeSet<Appointment>> acceptedAppPerDocColl = new TreeMap<>();
 	private String currentDate;
+	// free slots of each speciality ordered by date and time (index=speciality code)
+	private final ArrayList<TreeSet<Slot>> freeSlotsPerSpec = new ArrayList<>();
+	private final FreeSlotIndexer freeSlotIndexer = new FreeSlotIndexer();
+	// patients waiting for a slot
+	private final Waitlist waitlist = new Waitlist();
+	// clock driving the no-show detection
+	private final Clock clock;
+	// booked slots scheduled on their end time (epoch minutes)
+	private final TimingWheel<Slot> noShowWheel;
+	private long totalNoShows=0;
+	// log of the mutations shipped to the replicas, null when not replicated
+	private Journal journal;
+	// a replica only changes by applying the journal of its primary
+	private boolean replica=false;
+	private boolean applying=false;
+
+	public MedManager() {
+		this(Clock.systemDefaultZone());
+	}
+
+	/**
+	 * creates a med centre whose no-show detection follows the given clock
+	 * 
+	 * @param clock	clock giving the current time
+	 */
+	public MedManager(Clock clock) {
+		this(clock, AppointmentStorage.heap());
+	}
+
+	/**
+	 * creates a med centre with the given backing for the appointments
+	 * 
+	 * @param clock		clock giving the current time
+	 * @param storage	backing of the appointments, e.g. off-heap for long histories
+	 */
+	public MedManager(Clock clock, AppointmentStorage storage) {
+		this.appStore = storage.create();
+		this.appIndex = new AppointmentIndex(this.appStore);
+		this.appIndexPerPatient = new PatientIndex(this.appStore);
+		this.clock = clock;
+		this.noShowWheel = new TimingWheel<>(epochMinute(LocalDateTime.now(clock)));
+	}
+
 	/**
 	 * add a set of medical specialities to the list of specialities
 	 * offered by the med centre.
@@ -30,22 +99,34 @@ public class MedManager {
 	 * 
 	 * @param specialities the specialities
 	 */
-	public void addSpecialities(String... specialities) {
+	public synchronized void addSpecialities(String... specialities) {
+		checkWritable();
 		
-		// for each specialty add it to the collection
+		// for each new specialty assign a code and its per-speciality collections
+		int known = this.specialityCodes.size();
 		for (String spec : specialities) {
-			specialitiesColl.add(spec);
+			if (this.specialityCodes.code(spec) == this.doctorsPerSpec.size()) {
+				this.doctorsPerSpec.add(new int[0]);
+				this.freeSlotsPerSpec.add(new TreeSet<>(Slot.BY_DATE_TIME));
+			}
 		}
-		
+		if (this.specialityCodes.size() > known) {
+			String[] sorted = new String[this.specialityCodes.size()];
+			for (int i=0; i<sorted.length; i++)
+				sorted[i] = this.specialityCodes.value(i);
+			Arrays.sort(sorted);
+			this.specialitiesView = List.of(sorted);
+		}
+		record(Journal.Op.SPECIALITIES, (Object[]) specialities);
 	}
 
 	/**
 	 * retrieves the list of specialities offered in the med centre
 	 * 
-	 * @return list of specialities
+	 * @return list of specialities, sorted and not modifiable
 	 */
-	public Collection<String> getSpecialities() {
-		return this.specialitiesColl;
+	public synchronized Collection<String> getSpecialities() {
+		return this.specialitiesView;
 	}
 	
 	
@@ -58,7 +139,8 @@ public class MedManager {
 	 * @param speciality speciality of the doctor
 	 * @throws MedException in case of duplicate id or non-existing speciality
 	 */
-	public void addDoctor(String id, String name, String surname, String speciality) throws MedException {
+	public synchronized void addDoctor(String id, String name, String surname, String speciality) throws MedException {
+		checkWritable();
 		
 		// check if the id has already been entered in the doctors coll
 		if (this.doctorsColl.containsKey(id)) {
@@ -66,30 +148,51 @@ public class MedManager {
 		}
 		
 		// check if the speciality exists
-		if (!this.specialitiesColl.contains(speciality)) {
+		int spec = this.specialityCodes.find(speciality);
+		if (spec < 0) {
 			throw new MedException();
 		}
 		
 		// create a new doctor
-		Doctor d = new Doctor(id,name,surname,speciality);
+		int code = this.appStore.doctorCode(id);
+		Doctor d = new Doctor(id,name,surname,speciality,code,spec);
+		d.setListener(this.freeSlotIndexer);
 		
 		this.doctorsColl.put(id, d);
-		
+		while (this.doctorsByCode.size() <= code)
+			this.doctorsByCode.add(null);
+		this.doctorsByCode.set(code, d);
+		// insert the code keeping the doctors of the speciality ordered by id
+		int[] docs = this.doctorsPerSpec.get(spec);
+		int pos = 0;
+		while (pos < docs.length && this.doctorsByCode.get(docs[pos]).getId().compareTo(id) < 0)
+			pos++;
+		int[] upd = new int[docs.length + 1];
+		System.arraycopy(docs, 0, upd, 0, pos);
+		upd[pos] = code;
+		System.arraycopy(docs, pos, upd, pos + 1, docs.length - pos);
+		this.doctorsPerSpec.set(spec, upd);
+		record(Journal.Op.DOCTOR, id, name, surname, speciality);
 	}
 
 	/**
 	 * retrieves the list of doctors with the given speciality
 	 * 
 	 * @param speciality required speciality
-	 * @return the list of doctor ids
+	 * @return the list of doctor ids, not modifiable
 	 */
-	public Collection<String> getSpecialists(String speciality) {
-		
-		Collection<String> res = this.doctorsColl.values().stream()
-				.filter(d->d.getSpeciality().equals(speciality))
-				.map(d->d.getId())
-				.collect(Collectors.toList());
-		return res;
+	public synchronized Collection<String> getSpecialists(String speciality) {
+		int[] docs = doctorsOf(speciality);
+		String[] res = new String[docs.length];
+		for (int i=0; i<docs.length; i++)
+			res[i] = this.doctorsByCode.get(docs[i]).getId();
+		return List.of(res);
+	}
+
+	// codes of the doctors of a speciality ordered by id, none if the speciality is unknown
+	private int[] doctorsOf(String speciality) {
+		int spec = this.specialityCodes.find(speciality);
+		return spec < 0 ? new int[0] : this.doctorsPerSpec.get(spec);
 	}
 
 	/**
@@ -98,7 +201,7 @@ public class MedManager {
 	 * @param code code id of the doctor 
 	 * @return the name
 	 */
-	public String getDocName(String code) {
+	public synchronized String getDocName(String code) {
 		
 		Doctor d = this.doctorsColl.get(code);
 		
@@ -111,7 +214,7 @@ public class MedManager {
 	 * @param code code id of the doctor 
 	 * @return the surname
 	 */
-	public String getDocSurname(String code) {
+	public synchronized String getDocSurname(String code) {
 		
 		Doctor d = this.doctorsColl.get(code);
 		
@@ -122,75 +225,142 @@ public class MedManager {
 	 * Define a schedule for a doctor on a given day.
 	 * Slots are created between start and end hours with a 
 	 * duration expressed in minutes.
+	 * The method can be invoked several times for the same day to define
+	 * blocks with different durations (e.g. morning and afternoon clinics);
+	 * a block overlapping the slots already defined on the day is rejected.
+	 * On a day of the weekly schedules the first block replaces the free slots
+	 * of the templates, the booked ones are kept and cannot be overlapped.
+	 * A trailing interval shorter than the duration is not a slot.
 	 * 
 	 * @param code	doctor id code
 	 * @param date	date of schedule
 	 * @param start	start time
 	 * @param end	end time
 	 * @param duration duration in minutes
-	 * @return the number of slots defined
+	 * @return the number of slots defined, 0 if the block is rejected
+	 * @throws MedException in case of invalid code or date
 	 */
-	public int addDailySchedule(String code, String date, String start, String end, int duration) {
+	public synchronized int addDailySchedule(String code, String date, String start, String end, int duration) throws MedException {
+		checkWritable();
 		
-		// get the doc obj
-		Doctor doc = this.doctorsColl.get(code);
+		MedEvents.DailySchedule ev = new MedEvents.DailySchedule();
+		ev.begin();
+		int n = 0;
+		try {
+			// get the doc obj
+			Doctor doc = this.doctorsColl.get(code);
+			if (doc == null)
+				throw new MedException();
+			checkDate(date);
 		
-		// get the start and end time hours and minute
-		String[] startFields = start.split(":");
-		int hStart = Integer.parseInt(startFields[0]),
-				mStart = Integer.parseInt(startFields[1]);
+			// add the block to the doctor schedule, it updates the number of total slots too
+			int startMin = Times.toMinutes(start);
+			n = doc.addBlock(date, startMin, Times.toMinutes(end), duration);
+			// new slots go to the waiting patients first
+			if (n > 0 && this.waitlist.size(doc.getSpeciality()) > 0)
+				for (Slot s : new ArrayList<>(doc.getSlotsPerDate(date).slotsBetween(startMin, startMin + n*duration)))
+					offerToWaitlist(s);
+			if (n > 0)
+				record(Journal.Op.DAILY_SCHEDULE, code, date, start, end, duration);
+			return n;
+		} finally {
+			ev.done(code, date, n);
+		}
+	}
+
+	/**
+	 * retrieves the slot of a doctor schedule containing the given time
+	 * 
+	 * @param code	doctor id code
+	 * @param date	date of schedule
+	 * @param time	time "hh:mm"
+	 * @return the slot in the format "hh:mm-hh:mm", null if the time is not in the schedule
+	 * @throws MedException in case of invalid date
+	 */
+	public synchronized String findSlotAt(String code, String date, String time) throws MedException {
+		checkDate(date);
+		Doctor doc = this.doctorsColl.get(code);
+		if (doc == null || !doc.hasDate(date))
+			return null;
+		Slot slot = doc.getSlotsPerDate(date).slotAt(Times.toMinutes(time));
+		return slot == null ? null : slot.toString();
+	}
+
+	/**
+	 * Define a weekly recurring schedule for a doctor.
+	 * On each given weekday between the two dates (both included)
+	 * slots are created between start and end hours with a duration
+	 * expressed in minutes, as with {@link #addDailySchedule}.
+	 * The slots of a day are only created when the day is first used;
+	 * a daily schedule defined for a date replaces the templates on that date.
+	 * 
+	 * @param code	doctor id code
+	 * @param weekday day of the week
+	 * @param start	start time
+	 * @param end	end time
+	 * @param duration duration in minutes
+	 * @param from	first date the schedule is valid
+	 * @param to	last date the schedule is valid
+	 * @return the number of slots defined on each day
+	 * @throws MedException in case of invalid code, times or dates
+	 * 						or overlap with another weekly schedule
+	 */
+	public synchronized int addWeeklySchedule(String code, DayOfWeek weekday, String start, String end, int duration,
+			String from, String to) throws MedException {
+		checkWritable();
 		
-		String[] endFields = end.split(":");
-		int hEnd = Integer.parseInt(endFields[0]),
-				mEnd = Integer.parseInt(endFields[1]);
+		Doctor doc = this.doctorsColl.get(code);
+		if (doc == null || duration <= 0)
+			throw new MedException();
 		
-		// set for the slots in string format
-		TreeSet<String> slots_set = new TreeSet<>();
-		int countSlot=0;
-		while (true) {
-			
-			// if the current start time reached the end time stop the while
-			if (hStart == hEnd && mEnd == mStart)
-				break;
-			
-			// get the slot 
-			String slotString = toStringSlot(hStart,mStart,duration);
-			// add into the set
-			slots_set.add(slotString);
-			countSlot++;
-			// update the new start time for the next slot
-			String[] fields = slotString.split("-");
-			String[] fields2 = fields[1].split(":");
-			hStart = Integer.parseInt(fields2[0]); mStart = Integer.parseInt(fields2[1]);
+		checkDate(from);
+		checkDate(to);
+		ScheduleTemplate t;
+		try {
+			t = new ScheduleTemplate(weekday, Times.toMinutes(start), Times.toMinutes(end), duration,
+					LocalDate.parse(from), LocalDate.parse(to));
+		} catch (DateTimeParseException | NumberFormatException | StringIndexOutOfBoundsException e) {
+			throw new MedException("Invalid schedule: "+e.getMessage());
 		}
+		if (t.getFrom().isAfter(t.getTo()) || t.slotsPerDay() == 0 || doc.overlapsTemplate(t))
+			throw new MedException();
 		
-		// add to doctor slots collection
-		doc.addSlot(date, slots_set);
-		// update the number of total slots for a doctor
-		doc.updTotSlots(countSlot);
-		return countSlot;
+		doc.addTemplate(t);
+		// the new slots go to the patients waiting for their dates
+		int blockEnd = t.getStart() + t.slotsPerDay()*t.getDuration();
+		for (String date : this.waitlist.waitingDates(doc.getSpeciality(), from, to))
+			if (t.appliesTo(LocalDate.parse(date)) && doc.hasDate(date))
+				for (Slot s : new ArrayList<>(doc.getSlotsPerDate(date).slotsBetween(t.getStart(), blockEnd)))
+					offerToWaitlist(s);
+		record(Journal.Op.WEEKLY_SCHEDULE, code, weekday, start, end, duration, from, to);
+		return t.slotsPerDay();
+	}
+
+	/**
+	 * Define an exception to the weekly schedules of a doctor:
+	 * on the given date the doctor has no slots from the templates.
+	 * The exception is rejected if appointments are already booked on the
+	 * slots of the templates on that date: cancel them first.
+	 * 
+	 * @param code	doctor id code
+	 * @param date	date without schedule
+	 * @throws MedException in case of invalid code or date or appointments on the date
+	 */
+	public synchronized void addScheduleException(String code, String date) throws MedException {
+		checkWritable();
+		checkDate(date);
+		Doctor doc = this.doctorsColl.get(code);
+		if (doc == null || !doc.addException(date))
+			throw new MedException();
+		record(Journal.Op.SCHEDULE_EXCEPTION, code, date);
 	}
 	
 	// this function receive two integers representing the hour and minutes of the start time 
 	// another integer which represents the duration of the slot
 	// returns the slot in the format "hh:mm-hh:mm"
 	public String toStringSlot(int hs, int ms, int duration) {
-		int me = ms + duration;
-		int he = hs;
-		
-		if (me == 60) {
-			me=0;
-			he++;
-		}
-		else if (me>60) {
-			me = me - 60;
-			he++;
-		}
-		
-		String output = String.format("%02d:%02d-%02d:%02d",
-				hs,ms,he,me);
-		
-		return output;
+		int start = hs*60 + ms;
+		return Times.toSlot(start, start+duration);
 	}
 	/**
 	 * retrieves the available slots available on a given date for a speciality.
@@ -201,14 +371,113 @@ public class MedManager {
 	 * @param date			date to look for
 	 * @param speciality	required speciality
 	 * @return a map doc-id -> list of slots in the schedule
+	 * @throws MedException in case of invalid date
 	 */
-	public Map<String, List<String>> findSlots(String date, String speciality) {
+	public synchronized Map<String, List<String>> findSlots(String date, String speciality) throws MedException {
+		checkDate(date);
+		MedEvents.FindSlots ev = new MedEvents.FindSlots();
+		ev.begin();
 		
-		return this.doctorsColl.values().stream()
-				.filter(d->d.getSpeciality().equals(speciality))
-				.filter(d->d.hasDate(date))
-				.collect(Collectors.toMap(Doctor::getId, 
-						d->new ArrayList<>(d.getSlotsPerDate(date))));
+		Map<String, List<String>> res = new HashMap<>();
+		int[] slots = {0};
+		visitSlots(date, speciality, (doc, start, end)->{
+			res.computeIfAbsent(doc, d->new ArrayList<>()).add(Times.toSlot(start, end));
+			slots[0]++;
+		});
+		ev.done(date, speciality, res.size(), slots[0]);
+		return res;
+	}
+
+	/**
+	 * visits the slots on a given date for a speciality, as {@link #findSlots}
+	 * does, without building the map or the slot strings.
+	 * Slots are visited doctor by doctor, in time order.
+	 * 
+	 * @param date			date to look for
+	 * @param speciality	required speciality
+	 * @param visitor		receives each slot
+	 * @throws MedException in case of invalid date
+	 */
+	public synchronized void visitSlots(String date, String speciality, SlotVisitor visitor) throws MedException {
+		checkDate(date);
+		for (int code : doctorsOf(speciality)) {
+			Doctor d = this.doctorsByCode.get(code);
+			if (d.hasDate(date))
+				d.getSlotsPerDate(date).visit(visitor);
+		}
+	}
+
+	/**
+	 * retrieves the slots of several specialities on several dates in one call,
+	 * as {@link #findSlots} does for each speciality and date.
+	 * The result has an entry for each speciality and, inside it, an entry for each
+	 * date, possibly empty, with the map doc-id -> list of slots of the date.
+	 * The doctors of each speciality are looked up once; on large grids the cells
+	 * are computed in parallel.
+	 * 
+	 * @param dates			dates to look for
+	 * @param specialities	required specialities
+	 * @return a map speciality -> date -> doc-id -> list of slots in the schedule
+	 * @throws MedException in case of invalid dates
+	 */
+	public synchronized Map<String, Map<String, Map<String, List<String>>>> findSlotsGrid(Collection<String> dates,
+			Collection<String> specialities) throws MedException {
+		
+		TreeSet<String> specs = new TreeSet<>(specialities);
+		TreeSet<String> days = new TreeSet<>(dates);
+		for (String date : days)
+			checkDate(date);
+		
+		// the days of the weekly schedules are materialised here, one at a time,
+		// so the cells only read the schedules
+		List<GridCell> cells = new ArrayList<>();
+		long totSlots = 0;
+		for (String spec : specs) {
+			int[] docs = doctorsOf(spec);
+			for (String date : days) {
+				GridCell c = new GridCell(spec, date);
+				for (int code : docs) {
+					Doctor d = this.doctorsByCode.get(code);
+					if (d.hasDate(date)) {
+						DaySchedule day = d.getSlotsPerDate(date);
+						c.schedules.add(day);
+						totSlots += day.size();
+					}
+				}
+				cells.add(c);
+			}
+		}
+		
+		Stream<GridCell> stream = totSlots >= PARALLEL_GRID_SLOTS ? cells.parallelStream() : cells.stream();
+		stream.forEach(GridCell::compute);
+		
+		Map<String, Map<String, Map<String, List<String>>>> res = new TreeMap<>();
+		for (GridCell c : cells)
+			res.computeIfAbsent(c.speciality, sp->new TreeMap<>()).put(c.date, c.slots);
+		return res;
+	}
+
+	// below this number of slots a grid is computed by the calling thread
+	private static final int PARALLEL_GRID_SLOTS = 4096;
+
+	// a (speciality, date) cell of the availability grid
+	private static class GridCell {
+		final String speciality;
+		final String date;
+		final List<DaySchedule> schedules = new ArrayList<>();
+		Map<String, List<String>> slots;
+
+		GridCell(String speciality, String date) {
+			this.speciality = speciality;
+			this.date = date;
+		}
+
+		void compute() {
+			this.slots = new HashMap<>();
+			for (DaySchedule day : this.schedules)
+				if (day.size() > 0)
+					this.slots.put(day.getDocID(), day.toStrings());
+		}
 	}
 
 	/**
@@ -223,46 +492,338 @@ public class MedManager {
 	 * @return a unique id for the appointment
 	 * @throws MedException	in case of invalid code, date or slot
 	 */
-	public String setAppointment(String ssn, String name, String surname, String code, String date, String slot) throws MedException {
+	public synchronized String setAppointment(String ssn, String name, String surname, String code, String date, String slot) throws MedException {
+		checkWritable();
+		
+		MedEvents.SetAppointment ev = new MedEvents.SetAppointment();
+		ev.begin();
+		String id = null;
+		try {
+			// check the doc's code
+			if (!this.doctorsColl.containsKey(code))
+				throw new MedException();
+			// check the date
+			checkDate(date);
+			Doctor doc = this.doctorsColl.get(code);
+			if (!doc.hasDate(date))
+				throw new MedException();
+			// check the slot, it must be free
+			Slot s = doc.getSlotsPerDate(date).getSlot(slot);
+			if (s == null || !s.isFree())
+				throw new MedException();
+		
+			id = newAppointment(ssn, name, surname, doc, s);
+			record(Journal.Op.APPOINTMENT, ssn, name, surname, code, date, slot);
+			return id;
+		} finally {
+			ev.done(code, date, slot, id);
+		}
+	}
+
+	// this method creates an appointment in a free slot and returns its id
+	private String newAppointment(String ssn, String name, String surname, Doctor doc, Slot s) {
 		
-		// check the doc's code
-		if (!this.doctorsColl.containsKey(code))
+		// add the new appointment to our collection, ids are never reused
+		int id = this.appStore.add(doc.getId(), ssn, name, surname,
+				(int) LocalDate.parse(s.getDate()).toEpochDay(), s.getStart(), s.getEnd());
+		book(s, id, doc);
+		return Integer.toString(id);
+	}
+
+	/**
+	 * book the earliest available slot of a speciality, starting from a date.
+	 * Among the doctors with a free slot at the earliest time, the one with
+	 * the fewest appointments is chosen, to spread the load.
+	 * The slot is selected and booked in the same step, so concurrent callers
+	 * never get the same slot.
+	 * 
+	 * @param ssn		ssn of the patient
+	 * @param name		name of the patient
+	 * @param surname	surname of the patient
+	 * @param speciality required speciality
+	 * @param from		first date for the appointment
+	 * @return the id of the appointment, null if no slot is available
+	 * @throws MedException in case of non-existing speciality or invalid date
+	 */
+	public synchronized String bookEarliest(String ssn, String name, String surname, String speciality, String from) throws MedException {
+		checkWritable();
+		
+		int spec = this.specialityCodes.find(speciality);
+		if (spec < 0)
 			throw new MedException();
-		// check the date
-		Doctor doc = this.doctorsColl.get(code);
-		if (!doc.hasDate(date))
+		checkDate(from);
+		Slot s = earliestFreeSlot(spec, from, null);
+		if (s == null)
+			return null;
+		String id = newAppointment(ssn, name, surname, this.doctorsColl.get(s.getDocID()), s);
+		record(Journal.Op.BOOK_EARLIEST, ssn, name, surname, speciality, from);
+		return id;
+	}
+
+	// this method finds the earliest free slot of a speciality between the two dates
+	// (to can be null), materialising the days of the weekly schedules as needed
+	private Slot earliestFreeSlot(int spec, String from, String to) {
+		TreeSet<Slot> free = this.freeSlotsPerSpec.get(spec);
+		List<Doctor> docs = new ArrayList<>();
+		for (int code : this.doctorsPerSpec.get(spec))
+			docs.add(this.doctorsByCode.get(code));
+		Slot probe = new Slot(null, from, -1, -1);
+		// the template days before it have been materialised by this search
+		String scan = from;
+		while (true) {
+			Slot first = free.ceiling(probe);
+			// a day of the templates not used yet may come first
+			String next = null;
+			for (Doctor d : docs) {
+				String date = d.nextTemplateDate(scan);
+				if (date != null && (next == null || date.compareTo(next) < 0))
+					next = date;
+			}
+			if (next != null && (to == null || next.compareTo(to) <= 0)
+					&& (first == null || next.compareTo(first.getDate()) <= 0)) {
+				// the listener adds its slots to the free slots
+				for (Doctor d : docs)
+					if (d.hasDate(next))
+						d.getSlotsPerDate(next);
+				scan = next;
+				continue;
+			}
+			if (first == null || (to != null && first.getDate().compareTo(to) > 0))
+				return null;
+			
+			// among the slots at the same time pick the least loaded doctor
+			Slot best = first;
+			int bestLoad = this.doctorsColl.get(first.getDocID()).getScheduledAppointments();
+			for (Slot s : free.tailSet(first, false)) {
+				if (s.getStart() != first.getStart() || !s.getDate().equals(first.getDate()))
+					break;
+				int load = this.doctorsColl.get(s.getDocID()).getScheduledAppointments();
+				if (load < bestLoad) {
+					best = s;
+					bestLoad = load;
+				}
+			}
+			return best;
+		}
+	}
+
+	/**
+	 * add a patient to the waiting list of a speciality.
+	 * The patient waits for a slot between the two dates (both included):
+	 * if one is available it is booked immediately, otherwise the patient gets
+	 * the first slot that becomes available through new schedules or released
+	 * appointments. Patients with higher priority are served first, then
+	 * patients are served in order of request.
+	 * 
+	 * @param ssn		ssn of the patient
+	 * @param name		name of the patient
+	 * @param surname	surname of the patient
+	 * @param speciality required speciality
+	 * @param from		first acceptable date
+	 * @param to		last acceptable date
+	 * @param priority	priority of the request, higher first
+	 * @return the ticket of the request
+	 * @throws MedException in case of non-existing speciality or invalid dates
+	 */
+	public synchronized int joinWaitlist(String ssn, String name, String surname, String speciality,
+			String from, String to, int priority) throws MedException {
+		checkWritable();
+		
+		int spec = this.specialityCodes.find(speciality);
+		checkDate(from);
+		checkDate(to);
+		if (spec < 0 || from.compareTo(to) > 0)
 			throw new MedException();
-		// check the slot
-		Set<String> slotForDate = doc.getSlotsPerDate(date);
-		if (!slotForDate.contains(slot))
+		Waitlist.Entry e = this.waitlist.add(ssn, name, surname, speciality, from, to, priority);
+		Slot s = earliestFreeSlot(spec, from, to);
+		if (s != null)
+			assign(e, s);
+		record(Journal.Op.JOIN_WAITLIST, ssn, name, surname, speciality, from, to, priority);
+		return e.ticket;
+	}
+
+	/**
+	 * retrieves the appointment assigned to a waiting list request
+	 * 
+	 * @param ticket	ticket of the request
+	 * @return the appointment id, null if the patient is still waiting
+	 * @throws MedException in case of invalid ticket
+	 */
+	public synchronized String getWaitlistAppointment(int ticket) throws MedException {
+		if (!this.waitlist.exists(ticket))
 			throw new MedException();
-		
-		// get the start time
-		// creo il pattern identificando 2 gruppi di cattura, \\d{2} significa due cifre decimali
-		Pattern pattern = Pattern.compile("(\\d{2}:\\d{2})-(\\d{2}:\\d{2})");
-		// distingui questi 2 gruppi con un matcher su slot
-		Matcher matcher = pattern.matcher(slot); 
-		String startTime;
-		if (matcher.find()) {
-			// estraggo lo start time, i gruppi partono da 1
-			startTime = matcher.group(1);	
+		int id = this.waitlist.appointment(ticket);
+		return id == 0 ? null : Integer.toString(id);
+	}
+
+	/**
+	 * removes a request from the waiting list, if still waiting
+	 * 
+	 * @param ticket	ticket of the request
+	 * @throws MedException in case of invalid ticket
+	 */
+	public synchronized void leaveWaitlist(int ticket) throws MedException {
+		checkWritable();
+		if (!this.waitlist.exists(ticket))
+			throw new MedException();
+		Waitlist.Entry e = this.waitlist.get(ticket);
+		if (e != null)
+			this.waitlist.remove(e);
+		record(Journal.Op.LEAVE_WAITLIST, ticket);
+	}
+
+	/**
+	 * retrieves the number of patients waiting for a speciality
+	 * 
+	 * @param speciality required speciality
+	 * @return number of waiting patients
+	 */
+	public synchronized int waitlistSize(String speciality) {
+		return this.waitlist.size(speciality);
+	}
+
+	// this method books the slot for a waiting patient
+	private void assign(Waitlist.Entry e, Slot s) {
+		this.waitlist.remove(e);
+		newAppointment(e.ssn, e.name, e.surname, this.doctorsColl.get(s.getDocID()), s);
+		this.waitlist.assign(e, s.getBooking());
+	}
+
+	// this method gives a slot that became available to the first waiting patient accepting it
+	private void offerToWaitlist(Slot s) {
+		if (!s.isFree())
+			return;
+		Waitlist.Entry e = this.waitlist.match(this.doctorsColl.get(s.getDocID()).getSpeciality(), s.getDate());
+		if (e != null)
+			assign(e, s);
+	}
+
+	// keeps the free slots of each speciality up to date with the schedules
+	private class FreeSlotIndexer implements ScheduleListener {
+		@Override
+		public void slotsAdded(Collection<Slot> slots) {
+			for (Slot s : slots)
+				if (s.isFree())
+					freeSlots(s).add(s);
 		}
-		else {
-			System.out.println("Matcher failed!");
-			return null;
+
+		@Override
+		public void slotsRemoved(Collection<Slot> slots) {
+			for (Slot s : slots)
+				freeSlots(s).remove(s);
 		}
+	}
+
+	// this method gives the free slots of the speciality of the slot's doctor
+	private TreeSet<Slot> freeSlots(Slot s) {
+		return this.freeSlotsPerSpec.get(this.doctorsColl.get(s.getDocID()).getSpecialityCode());
+	}
 
-		// create a new appointment object
-		Appointment app = new Appointment(ssn,name,surname,code,date,startTime,slot);
-		// get the current size of appColl
-		int nApp = this.appColl.size();
-		// set the appointment id
-		app.setAppID(Integer.toString(nApp+1));
+	/**
+	 * cancel an appointment.
+	 * The slot becomes available again and the appointment is removed
+	 * from the reception queue of the doctor.
+	 * 
+	 * @param appId		appointment id
+	 * @throws MedException in case of invalid appointment id
+	 */
+	public synchronized void cancelAppointment(String appId) throws MedException {
+		checkWritable();
 		
-		// add the new appointment to our collection
-		this.appColl.put(Integer.toString(nApp+1), app);
+		int id = this.appStore.find(appId);
+		if (id == 0)
+			throw new MedException();
+		release(id);
+		this.appStore.remove(id);
+		record(Journal.Op.CANCEL, appId);
+	}
+
+	/**
+	 * move an appointment to another slot, possibly of another doctor.
+	 * The appointment keeps its id; the old slot becomes available again.
+	 * If the patient had already been accepted, they must be accepted again.
+	 * 
+	 * @param appId		appointment id
+	 * @param code		code id of the doctor
+	 * @param date		new date of the appointment
+	 * @param slot		new slot to be booked
+	 * @throws MedException in case of invalid appointment id, code, date or slot
+	 * 						or slot already booked
+	 */
+	public synchronized void rescheduleAppointment(String appId, String code, String date, String slot) throws MedException {
+		checkWritable();
+		
+		checkDate(date);
+		int id = this.appStore.find(appId);
+		Doctor doc = this.doctorsColl.get(code);
+		if (id == 0 || doc == null || !doc.hasDate(date))
+			throw new MedException();
+		Slot s = doc.getSlotsPerDate(date).getSlot(slot);
+		if (s == null || !s.isFree())
+			throw new MedException();
+		
+		// everything has been checked, now move the appointment
+		release(id);
+		this.appStore.move(id, code, (int) LocalDate.parse(date).toEpochDay(), s.getStart(), s.getEnd());
+		book(s, id, doc);
+		record(Journal.Op.RESCHEDULE, appId, code, date, slot);
+	}
+
+	// this method books the slot and adds the appointment to the indexes
+	private void book(Slot s, int id, Doctor doc) {
+		s.book(id);
+		freeSlots(s).remove(s);
+		this.appIndex.add(id);
+		this.appIndexPerDoc.computeIfAbsent(doc.getId(), c->new AppointmentIndex(appStore)).add(id);
+		this.appIndexPerPatient.add(id);
 		doc.updScheduledApp();
-		return Integer.toString(nApp+1);
+		// checked for no-show when the slot ends
+		this.noShowWheel.schedule((long) this.appStore.day(id)*24*60 + s.getEnd(), s);
+	}
+
+	// this method releases the slot of the appointment and removes it from the indexes,
+	// it must be called before the appointment is moved
+	private void release(int id) {
+		Appointment app = this.appStore.get(id);
+		Doctor doc = this.doctorsColl.get(app.getDocID());
+		Slot released = null;
+		if (doc.hasDate(app.getDate())) {
+			Slot s = doc.getSlotsPerDate(app.getDate()).slotStarting(app.getStartMinute());
+			if (s != null && s.getBooking() == id) {
+				s.release();
+				freeSlots(s).add(s);
+				released = s;
+			}
+		}
+		this.appIndex.remove(id);
+		removeFrom(this.appIndexPerDoc, app.getDocID(), id);
+		this.appIndexPerPatient.remove(id);
+		TreeSet<Appointment> accApp = this.acceptedAppPerDocColl.get(app.getDocID());
+		if (accApp != null)
+			accApp.remove(app);
+		doc.decScheduledApp();
+		// a no-show cancelled or moved no longer counts
+		if (app.isNoShow()) {
+			doc.decNoShows();
+			this.totalNoShows--;
+		}
+		if (released != null)
+			offerToWaitlist(released);
+	}
+
+	// this method removes an appointment from an index of the map, dropping the index when empty
+	private static void removeFrom(Map<String,AppointmentIndex> indexes, String key, int id) {
+		AppointmentIndex idx = indexes.get(key);
+		if (idx == null)
+			return;
+		idx.remove(id);
+		if (idx.isEmpty())
+			indexes.remove(key);
+	}
+
+	// this method checks if the appointment is booked
+	synchronized boolean hasAppointment(String idAppointment) {
+		return this.appStore.find(idAppointment) != 0;
 	}
 
 	/**
@@ -271,8 +832,8 @@ public class MedManager {
 	 * @param idAppointment id of appointment
 	 * @return doctor code id
 	 */
-	public String getAppointmentDoctor(String idAppointment) {
-		return this.appColl.get(idAppointment).getDocID();
+	public synchronized String getAppointmentDoctor(String idAppointment) {
+		return this.appStore.get(idAppointment).getDocID();
 	}
 
 	/**
@@ -281,8 +842,8 @@ public class MedManager {
 	 * @param idAppointment id of appointment
 	 * @return doctor patient ssn
 	 */
-	public String getAppointmentPatient(String idAppointment) {
-		return this.appColl.get(idAppointment).getSsn();
+	public synchronized String getAppointmentPatient(String idAppointment) {
+		return this.appStore.get(idAppointment).getSsn();
 	}
 
 	/**
@@ -291,8 +852,8 @@ public class MedManager {
 	 * @param idAppointment id of appointment
 	 * @return time of appointment
 	 */
-	public String getAppointmentTime(String idAppointment) {
-		return this.appColl.get(idAppointment).getStartTime();
+	public synchronized String getAppointmentTime(String idAppointment) {
+		return this.appStore.get(idAppointment).getStartTime();
 	}
 
 	/**
@@ -301,8 +862,8 @@ public class MedManager {
 	 * @param idAppointment id of appointment
 	 * @return date
 	 */
-	public String getAppointmentDate(String idAppointment) {
-		return this.appColl.get(idAppointment).getDate();
+	public synchronized String getAppointmentDate(String idAppointment) {
+		return this.appStore.get(idAppointment).getDate();
 	}
 
 	/**
@@ -313,29 +874,87 @@ public class MedManager {
 	 * @param code doctor id
 	 * @param date date required
 	 * @return list of appointments
+	 * @throws MedException in case of invalid date
 	 */
-	public Collection<String> listAppointments(String code, String date) {
+	public synchronized Collection<String> listAppointments(String code, String date) throws MedException {
 		
-		return this.appColl.values().stream()
-				.filter(a->a.getDocID().equals(code))
-				.map(Appointment::toStringAppointment)
-				.collect(Collectors.toList());
+		List<String> res = new ArrayList<>();
+		visitAppointments(code, date, (start, id, ssn)->res.add(Times.toTime(start)+"="+ssn));
+		return res;
 			
 	}
 
+	/**
+	 * visits the appointments of a doctor for a given day in time order,
+	 * as {@link #listAppointments} does, without building the list or the strings.
+	 * 
+	 * @param code		doctor id
+	 * @param date		date required
+	 * @param visitor	receives each appointment
+	 * @throws MedException in case of invalid date
+	 */
+	public synchronized void visitAppointments(String code, String date, AppointmentVisitor visitor) throws MedException {
+		checkDate(date);
+		AppointmentIndex idx = this.appIndexPerDoc.get(code);
+		if (idx != null)
+			idx.visitDate(date, visitor);
+	}
+
+	/**
+	 * retrieves the appointments of a doctor between two dates (both included).
+	 * Appointment ids are returned ordered by date and time; the ids are
+	 * copied into an array inside the lock, so the stream can be consumed
+	 * while other threads update the manager.
+	 * 
+	 * @param code doctor id
+	 * @param from first date of the range
+	 * @param to   last date of the range
+	 * @return stream of appointment ids
+	 * @throws MedException in case of invalid dates
+	 */
+	public synchronized Stream<String> appointmentsBetween(String code, String from, String to) throws MedException {
+		checkDate(from);
+		checkDate(to);
+		return Arrays.stream(docAppointments(code).idsBetween(from, to).toArray()).mapToObj(Integer::toString);
+	}
+
+	/**
+	 * retrieves the appointments of the whole med centre between two dates (both included).
+	 * Appointment ids are returned ordered by date and time, doctors mixed.
+	 * The ids are copied inside the lock, as {@link #appointmentsBetween(String, String, String)} does.
+	 * 
+	 * @param from first date of the range
+	 * @param to   last date of the range
+	 * @return stream of appointment ids
+	 * @throws MedException in case of invalid dates
+	 */
+	public synchronized Stream<String> appointmentsBetween(String from, String to) throws MedException {
+		checkDate(from);
+		checkDate(to);
+		return Arrays.stream(this.appIndex.idsBetween(from, to).toArray()).mapToObj(Integer::toString);
+	}
+
+	// this method returns the date index of a doctor, an empty one if the doctor has no appointments
+	private AppointmentIndex docAppointments(String code) {
+		AppointmentIndex idx = this.appIndexPerDoc.get(code);
+		return idx == null ? new AppointmentIndex(appStore) : idx;
+	}
+
 	/**
 	 * Define the current date for the medical centre
 	 * The date will be used to accept patients arriving at the centre.
 	 * 
 	 * @param date	current date
 	 * @return the number of total appointments for the day
+	 * @throws MedException in case of invalid date
 	 */
-	public int setCurrentDate(String date) {
+	public synchronized int setCurrentDate(String date) throws MedException {
+		checkWritable();
+		checkDate(date);
 		this.currentDate=date;
+		record(Journal.Op.CURRENT_DATE, date);
 		
-		return (int) this.appColl.values().stream()
-				.filter(a->a.getDate().equals(date))
-				.count();
+		return this.appIndex.countOnDate(date);
 	}
 
 	/**
@@ -343,14 +962,23 @@ public class MedManager {
 	 * 
 	 * @param ssn SSN of the patient
 	 */
-	public void accept(String ssn) {
-		this.appColl.values().stream()
-			.filter(a->a.getDate().equals(currentDate))
-			.filter(a->a.getSsn().equals(ssn))
+	public synchronized void accept(String ssn) {
+		checkWritable();
+		record(Journal.Op.ACCEPT, ssn);
+		MedEvents.Accept ev = new MedEvents.Accept();
+		ev.begin();
+		if (currentDate == null) {
+			ev.done(currentDate, 0);
+			return;
+		}
+		int[] accepted = {0};
+		this.appIndexPerPatient.onDay(ssn, (int) LocalDate.parse(currentDate).toEpochDay())
+			// the slot of a no-show is over, a completed one is done
+			.filter(a->!a.isNoShow() && !a.isCompleted())
 			.forEach(a->{
 				// se non abbiamo ancora un entry per questo dottore ne aggiungiamo una
 				if (!this.acceptedAppPerDocColl.containsKey(a.getDocID())) {
-					TreeSet<Appointment> accApp = new TreeSet<>();
+					TreeSet<Appointment> accApp = new TreeSet<>(Appointment.BY_TIME);
 					accApp.add(a);
 					this.acceptedAppPerDocColl.put(a.getDocID(), accApp);
 				}
@@ -360,8 +988,9 @@ public class MedManager {
 				}
 				// in ogni caso poi setta il paziente come accettato
 				a.setAccepted(true);
-				
+				accepted[0]++;
 			});
+		ev.done(currentDate, accepted[0]);
 	}
 
 	/**
@@ -373,13 +1002,14 @@ public class MedManager {
 	 * @param code	code id of the doctor
 	 * @return appointment id
 	 */
-	public String nextAppointment(String code) {
+	public synchronized String nextAppointment(String code) {
+		MedEvents.NextAppointment ev = new MedEvents.NextAppointment();
+		ev.begin();
 		TreeSet<Appointment> accApp = this.acceptedAppPerDocColl.get(code);
 		
-		if (accApp == null || accApp.size()==0)
-			return null;
-		
-		return accApp.first().getAppID();
+		String next = accApp == null || accApp.size()==0 ? null : accApp.first().getAppID();
+		ev.done(code, next);
+		return next;
 	}
 
 	/**
@@ -394,20 +1024,32 @@ public class MedManager {
 	 * 						or patient not accepted
 	 * 						or appointment not for the current day
 	 */
-	public void completeAppointment(String code, String appId)  throws MedException {
+	public synchronized void completeAppointment(String code, String appId)  throws MedException {
+		checkWritable();
 		
-		if (!this.doctorsColl.containsKey(code))
-			throw new MedException();
-		Doctor doc = this.doctorsColl.get(code);
-		if (!this.appColl.containsKey(appId))
-			throw new MedException();
-		Appointment app = this.appColl.get(appId);
+		MedEvents.CompleteAppointment ev = new MedEvents.CompleteAppointment();
+		ev.begin();
+		boolean completed = false;
+		try {
+			if (!this.doctorsColl.containsKey(code))
+				throw new MedException();
+			Doctor doc = this.doctorsColl.get(code);
+			Appointment app = this.appStore.get(appId);
+			if (app == null)
+				throw new MedException();
 		
-		if (!this.acceptedAppPerDocColl.get(code).contains(app))
-			throw new MedException();
+			TreeSet<Appointment> accApp = this.acceptedAppPerDocColl.get(code);
+			if (accApp == null || !accApp.contains(app))
+				throw new MedException();
 		
-		// appointment completed we can remove it from our collection
-		this.acceptedAppPerDocColl.get(code).remove(app);
+			// appointment completed we can remove it from our collection
+			accApp.remove(app);
+			app.setCompleted(true);
+			record(Journal.Op.COMPLETE, code, appId);
+			completed = true;
+		} finally {
+			ev.done(code, appId, completed);
+		}
 	}
 
 	/**
@@ -417,14 +1059,14 @@ public class MedManager {
 	 * @param code		doctor id
 	 * @param date		reference date
 	 * @return	no show rate
+	 * @throws MedException in case of invalid date
 	 */
-	public double showRate(String code, String date) {
+	public synchronized double showRate(String code, String date) throws MedException {
+		checkDate(date);
 		
-		double totNoApp = this.appColl.values().stream()
-				.filter(a->a.getDocID().equals(code) && a.getDate().equals(date)).count();
-		System.out.println(totNoApp);
-		double accPatNo = this.appColl.values().stream()
-				.filter(a->a.getDocID().equals(code) && a.getDate().equals(date))
+		AppointmentIndex docApps = docAppointments(code);
+		double totNoApp = docApps.countOnDate(date);
+		double accPatNo = docApps.onDate(date)
 				.filter(a->a.isAccepted())
 				.count();
 		
@@ -439,18 +1081,14 @@ public class MedManager {
 	 * 
 	 * @return the map id : completeness
 	 */
-	public Map<String, Double> scheduleCompleteness() {
+	public synchronized Map<String, Double> scheduleCompleteness() {
 		
 		
 		Map<String, Double> res = this.doctorsColl.values().stream()
 		.collect(Collectors.toMap(d->d.getId(),
 				d->{
-					System.out.println("Doc: "+((Doctor) d).getId());
-
 					int totSlotsNo = ((Doctor) d).getTotalSlots();
 					int totAcceptedApp = ((Doctor) d).getScheduledAppointments();
-					System.out.println("totSlotsNo: "+totSlotsNo);
-					System.out.println("totAcceptedApp: "+totAcceptedApp);
 					
 					return (double)totAcceptedApp/totSlotsNo;
 				}));
@@ -458,4 +1096,324 @@ public class MedManager {
 		return res;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * retrieves the k doctors with the most appointments between two dates (both included).
+	 * The result map iterates from the busiest doctor.
+	 * 
+	 * @param from	first date of the range
+	 * @param to	last date of the range
+	 * @param k		number of doctors
+	 * @return the map id : number of appointments
+	 * @throws MedException in case of invalid dates
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	public synchronized Map<String, Long> busiestDoctors(String from, String to, int k) throws MedException {
+		return doctorStats(from, to)
+				.collect(TopK.of(k, Comparator.comparingLong((DoctorStats s)->s.appointments).reversed()
+						.thenComparing(DoctorStats::id)))
+				.stream()
+				.collect(Collectors.toMap(DoctorStats::id, s->s.appointments, (a,b)->a, LinkedHashMap::new));
+	}
+
+	/**
+	 * retrieves the k doctors with the highest no-show rate between two dates (both included).
+	 * The no-show rate is the ratio of appointments marked as no-show (see {@link #detectNoShows})
+	 * over the appointments whose patient was either accepted or marked as no-show;
+	 * appointments not due yet do not count, and doctors without such appointments
+	 * are not considered.
+	 * The result map iterates from the highest rate.
+	 * 
+	 * @param from	first date of the range
+	 * @param to	last date of the range
+	 * @param k		number of doctors
+	 * @return the map id : no-show rate
+	 * @throws MedException in case of invalid dates
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	public synchronized Map<String, Double> highestNoShowRate(String from, String to, int k) throws MedException {
+		return doctorStats(from, to)
+				.filter(s->s.concluded() > 0)
+				.collect(TopK.of(k, Comparator.comparingDouble(DoctorStats::noShowRate).reversed()
+						.thenComparing(DoctorStats::id)))
+				.stream()
+				.collect(Collectors.toMap(DoctorStats::id, DoctorStats::noShowRate, (a,b)->a, LinkedHashMap::new));
+	}
+
+	/**
+	 * retrieves the k doctors with the most free slots between two dates (both included).
+	 * The result map iterates from the most idle doctor.
+	 * 
+	 * @param from	first date of the range
+	 * @param to	last date of the range
+	 * @param k		number of doctors
+	 * @return the map id : number of slots without appointment
+	 * @throws MedException in case of invalid dates
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	public synchronized Map<String, Long> mostIdleDoctors(String from, String to, int k) throws MedException {
+		return doctorStats(from, to)
+				.collect(TopK.of(k, Comparator.comparingLong(DoctorStats::idleSlots).reversed()
+						.thenComparing(DoctorStats::id)))
+				.stream()
+				.collect(Collectors.toMap(DoctorStats::id, DoctorStats::idleSlots, (a,b)->a, LinkedHashMap::new));
+	}
+
+	/**
+	 * retrieves the k specialities with the lowest utilisation between two dates (both included).
+	 * The utilisation is the ratio of appointments over slots of all the doctors of
+	 * the speciality; specialities without slots are not considered.
+	 * The result map iterates from the least utilised speciality.
+	 * 
+	 * @param from	first date of the range
+	 * @param to	last date of the range
+	 * @param k		number of specialities
+	 * @return the map speciality : utilisation
+	 * @throws MedException in case of invalid dates
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	public synchronized Map<String, Double> leastUtilisedSpecialities(String from, String to, int k) throws MedException {
+		// speciality code -> {appointments, slots}
+		Map<Integer, long[]> totals = doctorStats(from, to)
+				.collect(Collectors.toConcurrentMap(s->s.doctor.getSpecialityCode(),
+						s->new long[] {s.appointments, s.slots},
+						(a,b)->new long[] {a[0]+b[0], a[1]+b[1]}));
+		return totals.entrySet().stream()
+				.filter(e->e.getValue()[1] > 0)
+				.map(e->Map.entry(this.specialityCodes.value(e.getKey()), (double) e.getValue()[0]/e.getValue()[1]))
+				.collect(TopK.of(k, Map.Entry.<String,Double>comparingByValue()
+						.thenComparing(Map.Entry.comparingByKey())))
+				.stream()
+				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a,b)->a, LinkedHashMap::new));
+	}
+
+	// this method computes in parallel the activity of each doctor between the two dates;
+	// doctors are independent partitions and are only read
+	private Stream<DoctorStats> doctorStats(String from, String to) throws MedException {
+		checkDate(from);
+		checkDate(to);
+		if (from.compareTo(to) > 0)
+			return Stream.empty();
+		return this.doctorsColl.values().parallelStream()
+				.map(d->{
+					long apps=0, accepted=0, noShows=0;
+					AppointmentIndex idx = this.appIndexPerDoc.get(d.getId());
+					if (idx != null) {
+						Iterator<Appointment> it = idx.between(from, to).iterator();
+						while (it.hasNext()) {
+							Appointment a = it.next();
+							apps++;
+							if (a.isAccepted())
+								accepted++;
+							else if (a.isNoShow())
+								noShows++;
+						}
+					}
+					return new DoctorStats(d, apps, accepted, noShows, d.countSlots(from, to));
+				});
+	}
+
+	/**
+	 * exports all the appointments, ordered by date and time, to a CSV file with the columns
+	 * id, doctor, ssn, name, surname, date, start, end, accepted, noShow, completed.
+	 * The appointments are copied while the manager is locked, the file is
+	 * written afterwards without holding the lock.
+	 * 
+	 * @param file	output file, overwritten if it exists
+	 * @return the number of appointments exported
+	 * @throws IOException in case of write errors
+	 */
+	public long exportAppointmentsCsv(Path file) throws IOException {
+		return Exporter.appointmentsCsv(appointmentRows(), file);
+	}
+
+	/**
+	 * exports the schedules of all the doctors to a CSV file with a row for each slot
+	 * and the columns doctor, date, start, end, booked.
+	 * Days defined by weekly schedules are included.
+	 * The slots are copied while the manager is locked, the file is
+	 * written afterwards without holding the lock.
+	 * 
+	 * @param file	output file, overwritten if it exists
+	 * @return the number of slots exported
+	 * @throws IOException in case of write errors
+	 */
+	public long exportSchedulesCsv(Path file) throws IOException {
+		return Exporter.schedulesCsv(slotRows(), file);
+	}
+
+	/**
+	 * exports appointments and schedules to a compact columnar file,
+	 * with dictionary encoded doctor ids and SSNs and delta encoded dates and times.
+	 * The format is described in the ColumnarWriter class.
+	 * Both are copied in a single locked step, so the file is consistent,
+	 * and written afterwards without holding the lock.
+	 * 
+	 * @param file	output file, overwritten if it exists
+	 * @return the number of rows (appointments and slots) exported
+	 * @throws IOException in case of write errors
+	 */
+	public long exportColumnar(Path file) throws IOException {
+		Exporter.AppointmentRows apps;
+		Exporter.SlotRows slots;
+		synchronized (this) {
+			apps = appointmentRows();
+			slots = slotRows();
+		}
+		return Exporter.columnar(apps, slots, file);
+	}
+
+	// copies of the rows to export, the file is written outside of the lock
+	private synchronized Exporter.AppointmentRows appointmentRows() {
+		return new Exporter.AppointmentRows(this.appStore, this.appIndex.allIds().iterator(), this.appIndex.size());
+	}
+
+	private synchronized Exporter.SlotRows slotRows() {
+		return new Exporter.SlotRows(this.doctorsColl.values());
+	}
+
+	/**
+	 * marks as no-show the appointments whose slot has ended, according to the
+	 * clock of the med centre, without the patient being accepted.
+	 * No-show appointments are removed from the reception queues and their
+	 * patient can no longer be accepted.
+	 * The appointments are tracked on a timing wheel ordered by slot end,
+	 * so the cost is constant for each appointment.
+	 * 
+	 * @return the number of appointments marked as no-show by this call
+	 */
+	public synchronized int detectNoShows() {
+		checkWritable();
+		return detectNoShows(epochMinute(LocalDateTime.now(this.clock)));
+	}
+
+	// this method runs the no-show detection up to the given epoch minute;
+	// the callers, detectNoShows() and the journal replay, hold the lock of the manager
+	private int detectNoShows(long now) {
+		int[] marked = {0};
+		this.noShowWheel.advance(now, s->{
+			Appointment a = this.appStore.get(s.getBooking());
+			// the appointment may have been cancelled, moved or already processed
+			if (a == null || a.isAccepted() || a.isNoShow())
+				return;
+			a.setNoShow(true);
+			TreeSet<Appointment> accApp = this.acceptedAppPerDocColl.get(a.getDocID());
+			if (accApp != null)
+				accApp.remove(a);
+			this.doctorsColl.get(a.getDocID()).updNoShows();
+			marked[0]++;
+		});
+		this.totalNoShows += marked[0];
+		// the replicas reach the same state at their next marking poll,
+		// their wheel fires at the same deadlines
+		if (marked[0] > 0)
+			record(Journal.Op.NO_SHOWS, now);
+		return marked[0];
+	}
+
+	/**
+	 * checks if an appointment has been marked as no-show
+	 * 
+	 * @param idAppointment id of appointment
+	 * @return true if the patient did not show up
+	 */
+	public synchronized boolean isNoShow(String idAppointment) {
+		return this.appStore.get(idAppointment).isNoShow();
+	}
+
+	/**
+	 * retrieves the number of no-show appointments detected for a doctor
+	 * 
+	 * @param code	doctor id
+	 * @return number of no-shows
+	 */
+	public synchronized int noShowCount(String code) {
+		Doctor doc = this.doctorsColl.get(code);
+		return doc == null ? 0 : doc.getNoShows();
+	}
+
+	/**
+	 * retrieves the number of no-show appointments detected in the med centre
+	 * 
+	 * @return number of no-shows
+	 */
+	public synchronized long noShowCount() {
+		return this.totalNoShows;
+	}
+
+	// this method starts the journal of the mutations, replicas replay it from this point;
+	// the capacity is the number of entries kept in memory, if the journal is not started yet
+	synchronized Journal journal(int capacity) {
+		if (this.journal == null)
+			this.journal = new Journal(this.noShowWheel.current(), capacity);
+		return this.journal;
+	}
+
+	// this method makes the manager a read-only replica of another one
+	synchronized void makeReplica() {
+		this.replica = true;
+	}
+
+	// thrown by the mutating methods of a replica
+	static class ReadOnlyReplicaException extends IllegalStateException {
+		private static final long serialVersionUID = 1L;
+
+		ReadOnlyReplicaException() {
+			super("read-only replica");
+		}
+	}
+
+	// dates are validated here, at the boundary, so the indexes never see an invalid one
+	private static void checkDate(String date) throws MedException {
+		if (!Times.isDate(date))
+			throw new MedException("Invalid date: " + date);
+	}
+
+	private void checkWritable() {
+		if (this.replica && !this.applying)
+			throw new ReadOnlyReplicaException();
+	}
+
+	private void record(Journal.Op op, Object... args) {
+		if (this.journal == null)
+			return;
+		String[] a = new String[args.length];
+		for (int i=0; i<args.length; i++)
+			a[i] = args[i] == null ? null : args[i].toString();
+		this.journal.append(op, a);
+	}
+
+	// this method replays a mutation from the journal of the primary
+	synchronized void apply(Journal.Entry e) throws MedException {
+		String[] a = e.args;
+		this.applying = true;
+		try {
+			switch (e.op) {
+			case SPECIALITIES: addSpecialities(a); break;
+			case DOCTOR: addDoctor(a[0], a[1], a[2], a[3]); break;
+			case DAILY_SCHEDULE: addDailySchedule(a[0], a[1], a[2], a[3], Integer.parseInt(a[4])); break;
+			case WEEKLY_SCHEDULE:
+				addWeeklySchedule(a[0], DayOfWeek.valueOf(a[1]), a[2], a[3], Integer.parseInt(a[4]), a[5], a[6]);
+				break;
+			case SCHEDULE_EXCEPTION: addScheduleException(a[0], a[1]); break;
+			case APPOINTMENT: setAppointment(a[0], a[1], a[2], a[3], a[4], a[5]); break;
+			case BOOK_EARLIEST: bookEarliest(a[0], a[1], a[2], a[3], a[4]); break;
+			case CANCEL: cancelAppointment(a[0]); break;
+			case RESCHEDULE: rescheduleAppointment(a[0], a[1], a[2], a[3]); break;
+			case JOIN_WAITLIST: joinWaitlist(a[0], a[1], a[2], a[3], a[4], a[5], Integer.parseInt(a[6])); break;
+			case LEAVE_WAITLIST: leaveWaitlist(Integer.parseInt(a[0])); break;
+			case CURRENT_DATE: setCurrentDate(a[0]); break;
+			case ACCEPT: accept(a[0]); break;
+			case COMPLETE: completeAppointment(a[0], a[1]); break;
+			case NO_SHOWS: detectNoShows(Long.parseLong(a[0])); break;
+			}
+		} finally {
+			this.applying = false;
+		}
+	}
+
+	// minutes since 1970-01-01T00:00 of a local date and time
+	static long epochMinute(LocalDateTime t) {
+		return t.toLocalDate().toEpochDay()*24*60 + t.getHour()*60 + t.getMinute();
+	}
+
+}
@@ -0,0 +1,341 @@
+package it.polito.med;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Self-hosted HTTP/JSON front end of a med centre, on the JDK {@link HttpServer}.
+ * Each exchange runs on its own virtual thread when the runtime supports them,
+ * on a cached thread pool otherwise; the manager lock is the only serialisation point.
+ * <p>
+ * Parameters are taken from the query string and, for POST, from a form encoded body.
+ * Successful calls answer 200 (201 for bookings) with a JSON body; a MedException
+ * answers 409, a missing or malformed parameter 400, a write on a read-only replica 403
+ * and any other failure 500, logged with its stack trace.
+ * <p>
+ * The JDK server writes headers and body separately: run it with
+ * {@code -Dsun.net.httpserver.nodelay=true}, or with Nagle the body waits
+ * for the delayed ack of the headers, some 40 ms per request.
+ * <pre>
+ * GET  /specialities
+ * GET  /slots?date=&amp;speciality=                      {"doctor":["08:00-08:20",...],...}
+ * POST /appointments ssn name surname doctor date slot  {"id":"1"}
+ * POST /appointments/earliest ssn name surname speciality from
+ * GET  /appointments?id=                                {"id","doctor","patient","date","slot"}
+ * POST /appointments/cancel?id=
+ * POST /reception/date?date=                            {"appointments":n}
+ * POST /reception/accept?ssn=
+ * GET  /reception/next?doctor=                          {"id":"1"}
+ * POST /reception/complete?doctor=&amp;id=
+ * GET  /stats/show-rate?doctor=&amp;date=                   {"rate":0.5}
+ * GET  /stats/completeness                              {"doctor":0.5,...}
+ * GET  /stats/busiest?from=&amp;to=&amp;k=                        {"doctor":12,...}
+ * </pre>
+ */
+public class MedServer implements Closeable {
+
+	// bad request, answered with 400
+	private static class BadRequest extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		BadRequest(String message) {
+			super(message);
+		}
+	}
+
+	private static class Response {
+		final int status;
+		final byte[] body;
+
+		Response(int status, JsonWriter json) {
+			this.status = status;
+			this.body = json.toBytes();
+		}
+	}
+
+	private static final int MAX_BODY = 16*1024;
+	private static final System.Logger LOG = System.getLogger(MedServer.class.getName());
+
+	private final MedManager mgr;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * starts serving a med centre
+	 *
+	 * @param mgr		the med centre
+	 * @param address	address to listen on, port 0 for any free port
+	 * @throws IOException in case the address cannot be bound
+	 */
+	public MedServer(MedManager mgr, InetSocketAddress address) throws IOException {
+		this.mgr = mgr;
+		this.server = HttpServer.create(address, 0);
+		this.executor = newExecutor();
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/", this::handle);
+		this.server.start();
+	}
+
+	// virtual threads are available from Java 21
+	private static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(r->{
+				Thread t = new Thread(r, "med-server");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	/**
+	 * @return the port the server listens on
+	 */
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange ex) throws IOException {
+		Response r;
+		try {
+			r = route(ex.getRequestMethod(), ex.getRequestURI().getPath(), params(ex));
+		} catch (MedException e) {
+			r = error(409, e.getMessage() == null ? "rejected" : e.getMessage());
+		} catch (BadRequest e) {
+			r = error(400, e.getMessage());
+		} catch (MedManager.ReadOnlyReplicaException e) {
+			r = error(403, e.getMessage());
+		} catch (RuntimeException e) {
+			// the parameters have been validated: this is a bug, not a bad request
+			LOG.log(System.Logger.Level.ERROR, ex.getRequestMethod() + " " + ex.getRequestURI() + " failed", e);
+			r = error(500, "internal error");
+		}
+		ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		ex.sendResponseHeaders(r.status, r.body.length);
+		try (OutputStream out = ex.getResponseBody()) {
+			out.write(r.body);
+		}
+	}
+
+	private Response route(String method, String path, Map<String,String> p) throws MedException {
+		boolean get = method.equals("GET");
+		boolean post = method.equals("POST");
+		switch (path) {
+		case "/specialities":
+			if (get)
+				return ok(strings(mgr.getSpecialities()));
+			break;
+		case "/slots":
+			if (get)
+				return ok(slots(mgr.findSlots(date(p, "date"), required(p, "speciality"))));
+			break;
+		case "/appointments":
+			if (post)
+				return created(mgr.setAppointment(required(p, "ssn"), required(p, "name"), required(p, "surname"),
+						required(p, "doctor"), date(p, "date"), required(p, "slot")));
+			if (get)
+				return appointment(required(p, "id"));
+			break;
+		case "/appointments/earliest":
+			if (post)
+				return created(mgr.bookEarliest(required(p, "ssn"), required(p, "name"), required(p, "surname"),
+						required(p, "speciality"), date(p, "from")));
+			break;
+		case "/appointments/cancel":
+			if (post) {
+				mgr.cancelAppointment(required(p, "id"));
+				return ok(new JsonWriter(2).beginObject().endObject());
+			}
+			break;
+		case "/reception/date":
+			if (post)
+				return ok(new JsonWriter(24).beginObject()
+						.name("appointments").value(mgr.setCurrentDate(date(p, "date"))).endObject());
+			break;
+		case "/reception/accept":
+			if (post) {
+				mgr.accept(required(p, "ssn"));
+				return ok(new JsonWriter(2).beginObject().endObject());
+			}
+			break;
+		case "/reception/next":
+			if (get)
+				return ok(new JsonWriter(24).beginObject()
+						.name("id").value(mgr.nextAppointment(required(p, "doctor"))).endObject());
+			break;
+		case "/reception/complete":
+			if (post) {
+				mgr.completeAppointment(required(p, "doctor"), required(p, "id"));
+				return ok(new JsonWriter(2).beginObject().endObject());
+			}
+			break;
+		case "/stats/show-rate":
+			if (get)
+				return ok(new JsonWriter(32).beginObject()
+						.name("rate").value(mgr.showRate(required(p, "doctor"), date(p, "date"))).endObject());
+			break;
+		case "/stats/completeness":
+			if (get)
+				return ok(rates(mgr.scheduleCompleteness()));
+			break;
+		case "/stats/busiest":
+			if (get) {
+				int k = number(p, "k");
+				if (k < 0)
+					throw new BadRequest("parameter k is negative");
+				Map<String, Long> busiest = mgr.busiestDoctors(date(p, "from"), date(p, "to"), k);
+				JsonWriter json = new JsonWriter(16 + 24*busiest.size()).beginObject();
+				busiest.forEach((d, n)->json.name(d).value(n));
+				return ok(json.endObject());
+			}
+			break;
+		default:
+			return error(404, "unknown resource");
+		}
+		return error(405, "method not allowed");
+	}
+
+	private Response appointment(String id) {
+		JsonWriter json = new JsonWriter(128).beginObject().name("id").value(id);
+		// one lock acquisition, so a concurrent cancellation cannot split the reads
+		synchronized (mgr) {
+			if (!mgr.hasAppointment(id))
+				return error(404, "unknown appointment");
+			json.name("doctor").value(mgr.getAppointmentDoctor(id))
+				.name("patient").value(mgr.getAppointmentPatient(id))
+				.name("date").value(mgr.getAppointmentDate(id))
+				.name("slot").value(mgr.getAppointmentTime(id));
+		}
+		return ok(json.endObject());
+	}
+
+	private static JsonWriter strings(Collection<String> values) {
+		JsonWriter json = new JsonWriter(2 + 24*values.size()).beginArray();
+		for (String v : values)
+			json.value(v);
+		return json.endArray();
+	}
+
+	private static JsonWriter slots(Map<String, List<String>> slots) {
+		// every slot is 13 characters with quotes and comma
+		int size = 2;
+		for (List<String> l : slots.values())
+			size += 24 + 14*l.size();
+		JsonWriter json = new JsonWriter(size).beginObject();
+		slots.forEach((d, l)->{
+			json.name(d).beginArray();
+			for (String s : l)
+				json.value(s);
+			json.endArray();
+		});
+		return json.endObject();
+	}
+
+	private static JsonWriter rates(Map<String, Double> rates) {
+		JsonWriter json = new JsonWriter(2 + 40*rates.size()).beginObject();
+		rates.forEach((d, r)->json.name(d).value(r));
+		return json.endObject();
+	}
+
+	private static Response ok(JsonWriter json) {
+		return new Response(200, json);
+	}
+
+	private static Response created(String id) {
+		return new Response(id == null ? 200 : 201, new JsonWriter(24).beginObject().name("id").value(id).endObject());
+	}
+
+	private static Response error(int status, String message) {
+		return new Response(status, new JsonWriter(32 + message.length()).beginObject()
+				.name("error").value(message).endObject());
+	}
+
+	private static String required(Map<String,String> p, String name) {
+		String v = p.get(name);
+		if (v == null || v.isEmpty())
+			throw new BadRequest("missing parameter " + name);
+		return v;
+	}
+
+	// dates are compared as strings by the manager, only the ISO format is accepted
+	private static String date(Map<String,String> p, String name) {
+		String v = required(p, name);
+		try {
+			LocalDate.parse(v);
+		} catch (DateTimeParseException e) {
+			throw new BadRequest("parameter " + name + " is not a date");
+		}
+		return v;
+	}
+
+	private static int number(Map<String,String> p, String name) {
+		try {
+			return Integer.parseInt(required(p, name));
+		} catch (NumberFormatException e) {
+			throw new BadRequest("parameter " + name + " is not a number");
+		}
+	}
+
+	private static Map<String,String> params(HttpExchange ex) throws IOException {
+		Map<String,String> p = new HashMap<>();
+		parse(ex.getRequestURI().getRawQuery(), p);
+		if (ex.getRequestMethod().equals("POST")) {
+			try (InputStream in = ex.getRequestBody()) {
+				ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+				byte[] buf = new byte[1024];
+				int n;
+				while ((n = in.read(buf)) > 0) {
+					body.write(buf, 0, n);
+					if (body.size() > MAX_BODY)
+						throw new BadRequest("request body too large");
+				}
+				parse(body.toString(StandardCharsets.UTF_8), p);
+			}
+		}
+		return p;
+	}
+
+	// form encoding, a=1&b=2
+	private static void parse(String query, Map<String,String> p) {
+		if (query == null || query.isEmpty())
+			return;
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq <= 0)
+				continue;
+			try {
+				p.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+						URLDecoder.decode(pair.substring(eq+1), StandardCharsets.UTF_8));
+			} catch (IllegalArgumentException e) {
+				throw new BadRequest("malformed parameter");
+			}
+		}
+	}
+
+	/**
+	 * stops the server, waiting at most a second for the exchanges in progress
+	 */
+	@Override
+	public void close() {
+		this.server.stop(1);
+		this.executor.shutdown();
+	}
+}
@@ -0,0 +1,75 @@
+package it.polito.med;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.stream.Stream;
+
+/**
+ * Appointments of each patient, by ssn.
+ * A patient has a handful of appointments, so they are kept as an exact size
+ * sorted array of epoch day and id packed in a long, copied on each change:
+ * about 60 bytes per patient plus 8 per appointment, where an {@link AppointmentIndex}
+ * for each patient takes some 250 bytes before the first appointment.
+ */
+class PatientIndex {
+
+	private final AppointmentStore store;
+	// key ssn, value appointments of the patient ordered by date and id
+	private final HashMap<String,long[]> byPatient = new HashMap<>();
+
+	PatientIndex(AppointmentStore store) {
+		this.store = store;
+	}
+
+	// the appointment must be indexed before its day changes
+	void add(int id) {
+		long key = key(id);
+		long[] keys = this.byPatient.get(store.ssn(id));
+		if (keys == null) {
+			this.byPatient.put(store.ssn(id), new long[] {key});
+			return;
+		}
+		int i = Arrays.binarySearch(keys, key);
+		if (i >= 0)
+			return;
+		i = -i-1;
+		long[] grown = new long[keys.length+1];
+		System.arraycopy(keys, 0, grown, 0, i);
+		grown[i] = key;
+		System.arraycopy(keys, i, grown, i+1, keys.length-i);
+		this.byPatient.put(store.ssn(id), grown);
+	}
+
+	void remove(int id) {
+		String ssn = store.ssn(id);
+		long[] keys = this.byPatient.get(ssn);
+		if (keys == null)
+			return;
+		int i = Arrays.binarySearch(keys, key(id));
+		if (i < 0)
+			return;
+		// do not keep patients without appointments around
+		if (keys.length == 1) {
+			this.byPatient.remove(ssn);
+			return;
+		}
+		long[] shrunk = new long[keys.length-1];
+		System.arraycopy(keys, 0, shrunk, 0, i);
+		System.arraycopy(keys, i+1, shrunk, i, keys.length-i-1);
+		this.byPatient.put(ssn, shrunk);
+	}
+
+	private long key(int id) {
+		return (long) store.day(id) << 32 | id;
+	}
+
+	// appointments of the patient on a single epoch day, ordered by id
+	Stream<Appointment> onDay(String ssn, int epochDay) {
+		long[] keys = this.byPatient.get(ssn);
+		if (keys == null)
+			return Stream.empty();
+		int from = -Arrays.binarySearch(keys, (long) epochDay << 32) - 1;
+		int to = -Arrays.binarySearch(keys, (long) (epochDay+1) << 32) - 1;
+		return Arrays.stream(keys, from, to).mapToObj(k->new Appointment(store, (int) k));
+	}
+}
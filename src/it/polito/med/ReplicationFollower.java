@@ -0,0 +1,187 @@
+package it.polito.med;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+/**
+ * Read-only replica of a med centre, kept up to date by applying the
+ * journal streamed by a {@link ReplicationPrimary}.
+ * Queries run on the local {@link MedManager}, whose mutating methods
+ * throw IllegalStateException. The connection is retried when it drops,
+ * resuming from the last applied mutation. A mutation that cannot be applied
+ * stops the replica: it is then reported by {@link #failure()} and too stale to be read.
+ */
+public class ReplicationFollower implements Closeable {
+
+	/**
+	 * A query run on the replica.
+	 *
+	 * @param <T> result type
+	 */
+	public interface Query<T> {
+		T apply(MedManager mgr) throws MedException;
+	}
+
+	private static final long RETRY_MILLIS = 100;
+
+	private final InetSocketAddress primary;
+	private final long maxStaleness;
+	private final Thread worker;
+	private volatile MedManager mgr;
+	private volatile Socket socket;
+	private volatile boolean closed=false;
+	// sequence number of the last mutation applied
+	private volatile long applied=0;
+	// last time the replica was known to be up to date with the primary
+	private volatile long caughtUpAt=0;
+	private volatile Exception failure;
+
+	/**
+	 * starts a replica of the primary at the given address
+	 *
+	 * @param primary		address of the primary
+	 * @param maxStaleness	maximum staleness, in milliseconds, accepted by {@link #read}
+	 */
+	public ReplicationFollower(InetSocketAddress primary, long maxStaleness) {
+		this.primary = primary;
+		this.maxStaleness = maxStaleness;
+		this.worker = new Thread(this::run, "replication-follower");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * runs a query on the replica, provided it is not staler than the maximum staleness
+	 *
+	 * @param <T>	result type
+	 * @param query	query on the replica
+	 * @return the result of the query
+	 * @throws MedException in case the replica is too stale, e.g. disconnected from the primary,
+	 * 						or the query fails
+	 */
+	public <T> T read(Query<T> query) throws MedException {
+		Exception f = this.failure;
+		if (f != null)
+			throw new MedException("Replica failed: " + f);
+		if (staleness() > this.maxStaleness)
+			throw new MedException("Replica too stale");
+		return query.apply(this.mgr);
+	}
+
+	/**
+	 * @return the failure that stopped the replica, null while it is running
+	 */
+	public Exception failure() {
+		return this.failure;
+	}
+
+	/**
+	 * retrieves the replica, regardless of its staleness
+	 *
+	 * @return the med centre replica, null until the primary has been contacted
+	 */
+	public MedManager manager() {
+		return this.mgr;
+	}
+
+	/**
+	 * @return the sequence number of the last mutation applied
+	 */
+	public long applied() {
+		return this.applied;
+	}
+
+	/**
+	 * @return milliseconds since the replica was last known to be up to date,
+	 * 			Long.MAX_VALUE if it never was
+	 */
+	public long staleness() {
+		long t = this.caughtUpAt;
+		return t == 0 ? Long.MAX_VALUE : System.currentTimeMillis() - t;
+	}
+
+	/**
+	 * waits until the replica has applied the given mutation,
+	 * e.g. to read the result of a write made on the primary
+	 *
+	 * @param seq		sequence number of the mutation on the primary
+	 * @param timeout	maximum wait in milliseconds
+	 * @return true if the mutation has been applied
+	 * @throws InterruptedException if the thread is interrupted
+	 */
+	public synchronized boolean await(long seq, long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		long wait;
+		while (this.applied < seq && (wait = deadline - System.currentTimeMillis()) > 0)
+			wait(wait);
+		return this.applied >= seq;
+	}
+
+	private void run() {
+		while (!closed && failure == null) {
+			try (Socket s = new Socket()) {
+				this.socket = s;
+				s.connect(this.primary);
+				s.setTcpNoDelay(true);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+				long origin = in.readLong();
+				if (this.mgr == null)
+					this.mgr = replica(origin);
+				out.writeLong(this.applied);
+				out.flush();
+				while (!closed) {
+					byte type = in.readByte();
+					if (type == ReplicationPrimary.ENTRY) {
+						Journal.Entry e = Journal.Entry.read(in);
+						this.mgr.apply(e);
+						synchronized (this) {
+							this.applied = e.seq;
+							notifyAll();
+						}
+					} else if (in.readLong() <= this.applied) {
+						this.caughtUpAt = System.currentTimeMillis();
+					}
+				}
+			} catch (IOException e) {
+				// retry below
+			} catch (MedException | RuntimeException e) {
+				// the replica diverged from the primary or failed applying
+				// a mutation, it is not usable anymore
+				this.failure = e;
+				this.caughtUpAt = 0;
+				return;
+			}
+			try {
+				Thread.sleep(RETRY_MILLIS);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	// replica whose no-show clock starts where the one of the primary started
+	private static MedManager replica(long origin) {
+		MedManager m = new MedManager(Clock.fixed(Instant.ofEpochSecond(origin*60), ZoneOffset.UTC));
+		m.makeReplica();
+		return m;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.closed = true;
+		Socket s = this.socket;
+		if (s != null)
+			s.close();
+		this.worker.interrupt();
+	}
+}
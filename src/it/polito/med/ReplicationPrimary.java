@@ -0,0 +1,147 @@
+package it.polito.med;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ships the journal of a med centre to its read-only followers
+ * (see {@link ReplicationFollower}) over TCP.
+ * The journal starts when the primary is created: create it before loading
+ * the med centre, or followers miss the earlier mutations.
+ * The booking path only appends to the in-memory journal, whose older entries
+ * are checkpointed to a file; each follower is served by its own thread.
+ * A follower whose thread fails is disconnected and the failure is reported
+ * by {@link #failure()}.
+ * <p>
+ * Protocol: the follower sends the sequence number it has applied, then the primary
+ * streams the following entries, each preceded by {@link #ENTRY}; at least every
+ * {@link #HEARTBEAT_MILLIS} it sends {@link #HEAD} with the last sequence number
+ * of the journal. The first message is the no-show clock origin of the journal.
+ */
+public class ReplicationPrimary implements Closeable {
+
+	static final byte ENTRY=1, HEAD=2;
+	static final long HEARTBEAT_MILLIS = 50;
+	private static final int BATCH = 1024;
+
+	private final Journal journal;
+	private final ServerSocket server;
+	private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+	private volatile boolean closed=false;
+	// last failure serving a follower
+	private volatile RuntimeException failure;
+
+	/**
+	 * starts shipping the journal of a med centre
+	 *
+	 * @param mgr		the med centre
+	 * @param address	address to listen on, port 0 for any free port
+	 * @throws IOException in case the address cannot be bound
+	 */
+	public ReplicationPrimary(MedManager mgr, InetSocketAddress address) throws IOException {
+		this(mgr, address, Journal.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * starts shipping the journal of a med centre, keeping in memory at most
+	 * the given number of mutations; the capacity only applies if the journal
+	 * of the med centre is not started yet
+	 *
+	 * @param mgr		the med centre
+	 * @param address	address to listen on, port 0 for any free port
+	 * @param journalCapacity mutations kept in memory, at least 2
+	 * @throws IOException in case the address cannot be bound
+	 */
+	public ReplicationPrimary(MedManager mgr, InetSocketAddress address, int journalCapacity) throws IOException {
+		this.journal = mgr.journal(journalCapacity);
+		this.server = new ServerSocket();
+		this.server.bind(address);
+		Thread acceptor = new Thread(this::acceptFollowers, "replication-primary");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * @return the port the primary listens on
+	 */
+	public int getPort() {
+		return this.server.getLocalPort();
+	}
+
+	/**
+	 * @return the sequence number of the last mutation recorded
+	 */
+	public long head() {
+		return this.journal.head();
+	}
+
+	/**
+	 * @return the last failure of the primary, null if none: a follower connection
+	 * 			dropped by an unexpected error, or the journal no longer checkpointed
+	 */
+	public Exception failure() {
+		Exception e = this.journal.checkpointFailure();
+		return e != null ? e : this.failure;
+	}
+
+	private void acceptFollowers() {
+		while (!closed) {
+			try {
+				Socket s = this.server.accept();
+				this.followers.add(s);
+				Thread t = new Thread(()->serve(s), "replication-primary-" + s.getPort());
+				t.setDaemon(true);
+				t.start();
+			} catch (IOException e) {
+				// the server socket has been closed
+			}
+		}
+	}
+
+	private void serve(Socket s) {
+		try (s) {
+			s.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+			out.writeLong(this.journal.origin());
+			out.flush();
+			long next = in.readLong();
+			while (!closed) {
+				List<Journal.Entry> batch = this.journal.after(next, BATCH, HEARTBEAT_MILLIS);
+				for (Journal.Entry e : batch) {
+					out.writeByte(ENTRY);
+					e.write(out);
+					next = e.seq;
+				}
+				out.writeByte(HEAD);
+				out.writeLong(this.journal.head());
+				out.flush();
+			}
+		} catch (IOException | InterruptedException e) {
+			// the follower has gone, it resumes from its last entry when it reconnects
+		} catch (RuntimeException e) {
+			// not a disconnection: the follower is dropped and the failure reported
+			this.failure = e;
+		} finally {
+			this.followers.remove(s);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.closed = true;
+		this.server.close();
+		for (Socket s : this.followers)
+			s.close();
+	}
+}
@@ -0,0 +1,14 @@
+package it.polito.med;
+
+import java.util.Collection;
+
+/**
+ * Notified when slots enter or leave the schedule of a doctor,
+ * e.g. to keep indexes of the available slots.
+ */
+interface ScheduleListener {
+
+	void slotsAdded(Collection<Slot> slots);
+
+	void slotsRemoved(Collection<Slot> slots);
+}
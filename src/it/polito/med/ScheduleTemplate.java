@@ -0,0 +1,113 @@
+package it.polito.med;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.function.Consumer;
+
+/**
+ * Weekly recurring schedule of a doctor: every given weekday
+ * between two dates, slots of the given duration from start to end.
+ */
+public class ScheduleTemplate {
+
+	private DayOfWeek weekday;
+	// minutes from midnight
+	private int start;
+	private int end;
+	private int duration;
+	// validity range, both included
+	private LocalDate from;
+	private LocalDate to;
+	// watermark kept by the doctor: every date of the template before it
+	// has a schedule, materialised or explicit, or is an exception
+	private LocalDate open;
+
+	public ScheduleTemplate(DayOfWeek weekday, int start, int end, int duration, LocalDate from, LocalDate to) {
+		this.weekday = weekday;
+		this.start = start;
+		this.end = end;
+		this.duration = duration;
+		this.from = from;
+		this.to = to;
+		this.open = firstDate(from);
+	}
+
+	// first date from the given one where the template applies, ignoring the validity range
+	LocalDate firstDate(LocalDate date) {
+		return date.plusDays((weekday.getValue() - date.getDayOfWeek().getValue() + 7) % 7);
+	}
+
+	LocalDate getOpen() {
+		return open;
+	}
+
+	void setOpen(LocalDate open) {
+		this.open = open;
+	}
+
+	// this method checks if the template defines slots on the given date
+	public boolean appliesTo(LocalDate date) {
+		return date.getDayOfWeek() == weekday && !date.isBefore(from) && !date.isAfter(to);
+	}
+
+	// adds the slots of the template to the schedule of a day
+	public int addTo(DaySchedule day) {
+		return day.addBlock(start, end, duration);
+	}
+
+	// this method checks if the two templates define overlapping slots on some day
+	public boolean overlaps(ScheduleTemplate o) {
+		return weekday == o.weekday
+				&& !to.isBefore(o.from) && !o.to.isBefore(from)
+				&& start < o.start + o.slotsPerDay()*o.duration
+				&& o.start < start + slotsPerDay()*duration;
+	}
+
+	public int slotsPerDay() {
+		return Times.countSlots(start, end, duration);
+	}
+
+	// number of days in the validity range the template applies to
+	public long countDays() {
+		return countDays(from, to);
+	}
+
+	// number of days between the two dates (both included) the template applies to
+	public long countDays(LocalDate rangeFrom, LocalDate rangeTo) {
+		LocalDate start = rangeFrom.isAfter(from) ? rangeFrom : from;
+		LocalDate stop = rangeTo.isBefore(to) ? rangeTo : to;
+		// first matching day
+		int shift = (weekday.getValue() - start.getDayOfWeek().getValue() + 7) % 7;
+		LocalDate first = start.plusDays(shift);
+		if (first.isAfter(stop))
+			return 0;
+		return ChronoUnit.DAYS.between(first, stop)/7 + 1;
+	}
+
+	// calls the action on each day the template applies to, in date order
+	public void forEachDate(Consumer<LocalDate> action) {
+		int shift = (weekday.getValue() - from.getDayOfWeek().getValue() + 7) % 7;
+		for (LocalDate d=from.plusDays(shift); !d.isAfter(to); d=d.plusWeeks(1))
+			action.accept(d);
+	}
+
+	public DayOfWeek getWeekday() {
+		return weekday;
+	}
+	public int getStart() {
+		return start;
+	}
+	public int getEnd() {
+		return end;
+	}
+	public int getDuration() {
+		return duration;
+	}
+	public LocalDate getFrom() {
+		return from;
+	}
+	public LocalDate getTo() {
+		return to;
+	}
+}
@@ -0,0 +1,69 @@
+package it.polito.med;
+
+import java.util.Comparator;
+
+/**
+ * A slot of a doctor's daily schedule.
+ */
+public class Slot {
+
+	// orders slots by date, start time and doctor; a probe slot with null doctor comes first
+	static final Comparator<Slot> BY_DATE_TIME = Comparator.comparing(Slot::getDate)
+			.thenComparingInt(Slot::getStart)
+			.thenComparing(Slot::getDocID, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+	private String docID;
+	private String date;
+	// minutes from midnight, end excluded
+	private int start;
+	private int end;
+	// id of the appointment booked in the slot, 0 if the slot is free
+	private int booking;
+
+	public Slot(String docID, String date, int start, int end) {
+		this.docID = docID;
+		this.date = date;
+		this.start = start;
+		this.end = end;
+	}
+
+	// this method checks if the slot contains the given minute of the day
+	public boolean contains(int minute) {
+		return minute >= start && minute < end;
+	}
+
+	public boolean isFree() {
+		return booking == 0;
+	}
+
+	public void book(int appID) {
+		this.booking = appID;
+	}
+
+	public void release() {
+		this.booking = 0;
+	}
+
+	public int getBooking() {
+		return booking;
+	}
+
+	public String getDocID() {
+		return docID;
+	}
+	public String getDate() {
+		return date;
+	}
+	public int getStart() {
+		return start;
+	}
+	public int getEnd() {
+		return end;
+	}
+
+	// slot in the format "hh:mm-hh:mm"
+	@Override
+	public String toString() {
+		return Times.toSlot(start, end);
+	}
+}
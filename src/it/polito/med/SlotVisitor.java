@@ -0,0 +1,16 @@
+package it.polito.med;
+
+/**
+ * Receives the slots of a schedule one at a time,
+ * as primitive fields instead of formatted strings.
+ */
+@FunctionalInterface
+public interface SlotVisitor {
+
+	/**
+	 * @param docId		code id of the doctor
+	 * @param start		start time as minutes from midnight
+	 * @param end		end time as minutes from midnight
+	 */
+	void visit(String docId, int start, int end);
+}
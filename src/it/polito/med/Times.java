@@ -0,0 +1,56 @@
+package it.polito.med;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Conversions between the "hh:mm" / "hh:mm-hh:mm" strings
+ * used by the API and minutes of the day, and checks of the
+ * "yyyy-MM-dd" dates.
+ */
+final class Times {
+
+	private Times() {}
+
+	// "hh:mm" -> minutes from midnight
+	static int toMinutes(String time) {
+		int sep = time.indexOf(':');
+		return Integer.parseInt(time.substring(0, sep))*60 + Integer.parseInt(time.substring(sep+1));
+	}
+
+	// minutes from midnight -> "hh:mm"
+	static String toTime(int minutes) {
+		return String.format("%02d:%02d", minutes/60, minutes%60);
+	}
+
+	// slot in the format "hh:mm-hh:mm"
+	static String toSlot(int start, int end) {
+		return String.format("%02d:%02d-%02d:%02d", start/60, start%60, end/60, end%60);
+	}
+
+	// number of slots of the given duration between start and end,
+	// a trailing interval shorter than the duration is not a slot
+	static int countSlots(int start, int end, int duration) {
+		return end > start && duration > 0 ? (end-start)/duration : 0;
+	}
+
+	// checks a date in the format "yyyy-MM-dd": dates are compared as strings
+	// and indexed by epoch day, no other format can be used
+	static boolean isDate(String date) {
+		if (date == null || date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-')
+			return false;
+		for (int i=0; i<10; i++) {
+			char c = date.charAt(i);
+			if (i != 4 && i != 7 && (c < '0' || c > '9'))
+				return false;
+		}
+		try {
+			LocalDate.of(Integer.parseInt(date, 0, 4, 10), Integer.parseInt(date, 5, 7, 10),
+					Integer.parseInt(date, 8, 10, 10));
+			return true;
+		} catch (DateTimeException e) {
+			// e.g. 2023-02-30
+			return false;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package it.polito.med;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel with a tick of one minute.
+ * 
+ * Each level has {@value #SIZE} buckets; a bucket of level l covers
+ * SIZE^l ticks, so four levels cover about 32 years. An item is stored at
+ * the lowest level whose parent window contains both the current tick and
+ * its deadline; when the wheel enters the window of a bucket, the bucket is
+ * cascaded to the lower levels. Scheduling is O(1) and each item is moved
+ * at most once per level, so the amortised cost per item is O(1).
+ * An occupancy bitmap per level lets the wheel jump straight to the next tick
+ * with work to do, so advancing does not depend on the elapsed time.
+ * Items are never removed: owners check on expiry that the item is still valid.
+ */
+class TimingWheel<T> {
+
+	private static final int BITS = 6;
+	static final int SIZE = 1 << BITS;
+	private static final int MASK = SIZE - 1;
+	private static final int LEVELS = 4;
+
+	private static class Entry<T> {
+		final long deadline;
+		final T item;
+
+		Entry(long deadline, T item) {
+			this.deadline = deadline;
+			this.item = item;
+		}
+	}
+
+	private final List<List<Entry<T>>> buckets = new ArrayList<>();
+	// bit i of a level is set when its bucket i is not empty
+	private final long[] occupied = new long[LEVELS];
+	// deadlines beyond the top level
+	private List<Entry<T>> overflow = new ArrayList<>();
+	// next tick to process, every deadline before it has expired
+	private long current;
+	private int size=0;
+
+	TimingWheel(long start) {
+		this.current = start;
+		for (int i=0; i<LEVELS*SIZE; i++)
+			buckets.add(new ArrayList<>());
+	}
+
+	/**
+	 * schedules an item, a deadline already passed expires at the next advance
+	 */
+	void schedule(long deadline, T item) {
+		insert(new Entry<>(Math.max(deadline, current), item));
+		size++;
+	}
+
+	private void insert(Entry<T> e) {
+		int level = 0;
+		while (level < LEVELS && (e.deadline >>> (BITS*(level+1))) != (current >>> (BITS*(level+1))))
+			level++;
+		if (level == LEVELS)
+			overflow.add(e);
+		else {
+			int index = (int) ((e.deadline >>> (BITS*level)) & MASK);
+			bucket(level, index).add(e);
+			occupied[level] |= 1L << index;
+		}
+	}
+
+	private List<Entry<T>> bucket(int level, int index) {
+		return buckets.get(level*SIZE + index);
+	}
+
+	/**
+	 * processes the ticks up to now (included)
+	 * 
+	 * @param now		current tick
+	 * @param expired	receives the items whose deadline has passed
+	 * @return the number of expired items
+	 */
+	int advance(long now, Consumer<T> expired) {
+		int n = 0;
+		while (current <= now) {
+			// ticks without buckets to cascade or fire are skipped
+			long next = nextEvent();
+			if (next > now) {
+				current = now + 1;
+				break;
+			}
+			current = next;
+			// entering the window of higher level buckets: move them down
+			if ((current & ((1L << (BITS*LEVELS)) - 1)) == 0 && !overflow.isEmpty()) {
+				List<Entry<T>> moving = overflow;
+				overflow = new ArrayList<>();
+				for (Entry<T> e : moving)
+					insert(e);
+			}
+			for (int level=LEVELS-1; level>0; level--)
+				if ((current & ((1L << (BITS*level)) - 1)) == 0)
+					cascade(level, (int) ((current >>> (BITS*level)) & MASK));
+			
+			int index = (int) (current & MASK);
+			List<Entry<T>> due = bucket(0, index);
+			if (!due.isEmpty()) {
+				List<Entry<T>> fired = new ArrayList<>(due);
+				due.clear();
+				occupied[0] &= ~(1L << index);
+				size -= fired.size();
+				n += fired.size();
+				for (Entry<T> e : fired)
+					expired.accept(e.item);
+			}
+			current++;
+		}
+		return n;
+	}
+
+	// first tick from the current one where a bucket is cascaded or fired, Long.MAX_VALUE if none.
+	// The buckets of a level only hold deadlines in the current window of the level above,
+	// so each level is looked up in that window only
+	private long nextEvent() {
+		long next = Long.MAX_VALUE;
+		for (int level=0; level<LEVELS; level++) {
+			int shift = BITS*level;
+			// first bucket of the level not processed yet
+			long first = (current + (1L << shift) - 1) >>> shift;
+			if ((first >>> BITS) != (current >>> (shift + BITS)))
+				continue;
+			long pending = occupied[level] & (-1L << (first & MASK));
+			if (pending != 0)
+				next = Math.min(next, ((first & ~(long) MASK) | Long.numberOfTrailingZeros(pending)) << shift);
+		}
+		if (!overflow.isEmpty()) {
+			int shift = BITS*LEVELS;
+			next = Math.min(next, ((current + (1L << shift) - 1) >>> shift) << shift);
+		}
+		return next;
+	}
+
+	private void cascade(int level, int index) {
+		List<Entry<T>> bucket = bucket(level, index);
+		if (bucket.isEmpty())
+			return;
+		List<Entry<T>> moving = new ArrayList<>(bucket);
+		bucket.clear();
+		occupied[level] &= ~(1L << index);
+		for (Entry<T> e : moving)
+			insert(e);
+	}
+
+	int size() {
+		return size;
+	}
+
+	long current() {
+		return current;
+	}
+}
@@ -0,0 +1,61 @@
+package it.polito.med;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collector;
+
+/**
+ * Collector selecting the k best elements of a stream with a bounded heap.
+ * 
+ * The heap keeps the worst retained element on top, so each element costs
+ * O(log k) and memory stays O(k) whatever the size of the stream.
+ * Partial heaps of a parallel stream are merged the same way.
+ */
+final class TopK {
+
+	private TopK() {}
+
+	// the heap grows as needed beyond this, a large k does not preallocate
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * @param k		number of elements to keep
+	 * @param order	ordering of the result, best first
+	 * @return collector producing the k best elements, best first
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	static <T> Collector<T,?,List<T>> of(int k, Comparator<? super T> order) {
+		if (k < 0)
+			throw new IllegalArgumentException("negative k: " + k);
+		// worst element on top
+		Comparator<? super T> reversed = Collections.reverseOrder(order);
+		int capacity = Math.max(1, Math.min(k, INITIAL_CAPACITY));
+		return Collector.<T,PriorityQueue<T>,List<T>>of(
+				()->new PriorityQueue<>(capacity, reversed),
+				(heap, e)->offer(heap, e, k, order),
+				(h1, h2)->{
+					for (T e : h2)
+						offer(h1, e, k, order);
+					return h1;
+				},
+				heap->{
+					List<T> res = new ArrayList<>(heap);
+					res.sort(order);
+					return res;
+				});
+	}
+
+	private static <T> void offer(PriorityQueue<T> heap, T e, int k, Comparator<? super T> order) {
+		if (k == 0)
+			return;
+		if (heap.size() < k)
+			heap.add(e);
+		else if (order.compare(e, heap.peek()) < 0) {
+			heap.poll();
+			heap.add(e);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package it.polito.med;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Patients waiting for a slot of a speciality within a range of dates.
+ * Requests of each speciality are ordered by priority (highest first)
+ * and then by request time.
+ * <p>
+ * Each waiting entry is indexed once, under the first date of its range:
+ * the patient for a freed slot is the best of the entries starting on or
+ * before its date and ending on or after it, so only the requests
+ * starting earlier are looked at.
+ * <p>
+ * Entries are dropped once assigned or left; what is kept for every ticket
+ * is the id of the assigned appointment, 4 bytes each, so the tickets of
+ * the past still answer and the history grows by that much per request.
+ */
+class Waitlist {
+
+	/**
+	 * A waiting patient.
+	 */
+	static class Entry {
+		final int ticket;
+		final String ssn;
+		final String name;
+		final String surname;
+		final String speciality;
+		// range of dates, both included
+		final String from;
+		final String to;
+		final int priority;
+
+		Entry(int ticket, String ssn, String name, String surname, String speciality,
+				String from, String to, int priority) {
+			this.ticket = ticket;
+			this.ssn = ssn;
+			this.name = name;
+			this.surname = surname;
+			this.speciality = speciality;
+			this.from = from;
+			this.to = to;
+			this.priority = priority;
+		}
+	}
+
+	private static final Comparator<Entry> ORDER = Comparator.comparingInt((Entry e)->-e.priority)
+			.thenComparingInt(e->e.ticket);
+
+	// waiting entries of each speciality (key=speciality)
+	private TreeMap<String,TreeSet<Entry>> waiting = new TreeMap<>();
+	// waiting entries of each speciality by first accepted date (key=speciality, then date)
+	private Map<String,TreeMap<String,TreeSet<Entry>>> byFrom = new HashMap<>();
+	// entries still waiting (key=ticket)
+	private Map<Integer,Entry> tickets = new HashMap<>();
+	// appointment assigned to each ticket, 0 if none
+	private int[] assigned = new int[16];
+	private int lastTicket=0;
+
+	Entry add(String ssn, String name, String surname, String speciality, String from, String to, int priority) {
+		Entry e = new Entry(++lastTicket, ssn, name, surname, speciality, from, to, priority);
+		if (lastTicket == assigned.length)
+			assigned = Arrays.copyOf(assigned, assigned.length*2);
+		tickets.put(e.ticket, e);
+		waiting.computeIfAbsent(speciality, s->new TreeSet<>(ORDER)).add(e);
+		byFrom.computeIfAbsent(speciality, s->new TreeMap<>())
+				.computeIfAbsent(from, k->new TreeSet<>(ORDER)).add(e);
+		return e;
+	}
+
+	// true if the ticket has been given, whether still waiting or not
+	boolean exists(int ticket) {
+		return ticket > 0 && ticket <= lastTicket;
+	}
+
+	// entry of a ticket still waiting, null otherwise
+	Entry get(int ticket) {
+		return tickets.get(ticket);
+	}
+
+	// id of the appointment assigned to a ticket, 0 if none
+	int appointment(int ticket) {
+		return assigned[ticket];
+	}
+
+	// records the appointment given to an entry, removed from the waiting ones first
+	void assign(Entry e, int appID) {
+		assigned[e.ticket] = appID;
+	}
+
+	// the entry is not waiting anymore
+	void remove(Entry e) {
+		TreeSet<Entry> entries = waiting.get(e.speciality);
+		if (entries == null || !entries.remove(e))
+			return;
+		tickets.remove(e.ticket);
+		TreeMap<String,TreeSet<Entry>> dates = byFrom.get(e.speciality);
+		TreeSet<Entry> day = dates.get(e.from);
+		day.remove(e);
+		if (day.isEmpty())
+			dates.remove(e.from);
+	}
+
+	// first waiting entry of the speciality accepting the date, null if none
+	Entry match(String speciality, String date) {
+		TreeMap<String,TreeSet<Entry>> dates = byFrom.get(speciality);
+		if (dates == null)
+			return null;
+		Entry best = null;
+		for (TreeSet<Entry> day : dates.headMap(date, true).values())
+			// entries of a day are in order, the first still accepting the date is its best
+			for (Entry e : day)
+				if (best != null && ORDER.compare(e, best) >= 0)
+					break;
+				else if (e.to.compareTo(date) >= 0) {
+					best = e;
+					break;
+				}
+		return best;
+	}
+
+	// dates between the two given (both included) some patient of the speciality waits for
+	List<String> waitingDates(String speciality, String from, String to) {
+		List<String> res = new ArrayList<>();
+		TreeMap<String,TreeSet<Entry>> dates = byFrom.get(speciality);
+		if (dates == null)
+			return res;
+		// ranges overlapping the given one, clipped to it and merged
+		List<long[]> ranges = new ArrayList<>();
+		long first = LocalDate.parse(from).toEpochDay(), last = LocalDate.parse(to).toEpochDay();
+		for (TreeSet<Entry> day : dates.headMap(to, true).values())
+			for (Entry e : day)
+				if (e.to.compareTo(from) >= 0)
+					ranges.add(new long[] {Math.max(first, LocalDate.parse(e.from).toEpochDay()),
+							Math.min(last, LocalDate.parse(e.to).toEpochDay())});
+		ranges.sort(Comparator.comparingLong(r->r[0]));
+		long next = Long.MIN_VALUE;
+		for (long[] r : ranges)
+			for (long d=Math.max(next, r[0]); d<=r[1]; d++) {
+				res.add(LocalDate.ofEpochDay(d).toString());
+				next = d+1;
+			}
+		return res;
+	}
+
+	int size(String speciality) {
+		TreeSet<Entry> entries = waiting.get(speciality);
+		return entries == null ? 0 : entries.size();
+	}
+}
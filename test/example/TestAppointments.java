@@ -0,0 +1,316 @@
+package example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+
+public class TestAppointments {
+
+	private static final String CODE = "XD345";
+	private static final String SSN = "GVNBNC80B14F219K";
+	private MedManager mgr;
+
+	@Before
+	public void setUp() throws MedException {
+		// fixed after the slots of the fixtures, no-shows do not depend on the real date
+		mgr = new MedManager(Clock.fixed(Instant.parse("2023-07-01T00:00:00Z"), ZoneOffset.UTC));
+		mgr.addSpecialities("Cardiology");
+		mgr.addDoctor(CODE,"John","Smith","Cardiology");
+		mgr.addDoctor("AH876","Jane","Black","Cardiology");
+		for (String date : List.of("2023-06-26","2023-06-27","2023-06-28","2023-06-29")) {
+			mgr.addDailySchedule(CODE, date, "10:00", "12:00", 20);
+			mgr.addDailySchedule("AH876", date, "10:00", "12:00", 20);
+		}
+	}
+
+	@Test
+	public void testRangeQueries() throws MedException {
+		String a1 = mgr.setAppointment(SSN,"Giovanni","Bianchi",CODE,"2023-06-28","10:40-11:00");
+		String a2 = mgr.setAppointment("LRARSS87G64A341J","Laura","Rossi",CODE,"2023-06-28","10:00-10:20");
+		String a3 = mgr.setAppointment(SSN,"Giovanni","Bianchi",CODE,"2023-06-26","11:00-11:20");
+		String a4 = mgr.setAppointment(SSN,"Giovanni","Bianchi","AH876","2023-06-27","10:00-10:20");
+		mgr.setAppointment(SSN,"Giovanni","Bianchi",CODE,"2023-06-29","10:00-10:20");
+
+		assertEquals(List.of(a3, a2, a1),
+				mgr.appointmentsBetween(CODE, "2023-06-26", "2023-06-28").collect(Collectors.toList()));
+		assertEquals(List.of(a4, a2, a1),
+				mgr.appointmentsBetween("2023-06-27", "2023-06-28").collect(Collectors.toList()));
+		assertEquals(0, mgr.appointmentsBetween("2023-06-28", "2023-06-27").count());
+		assertEquals(0, mgr.appointmentsBetween("AH876", "2023-06-28", "2023-07-31").count());
+
+		// the stream is a snapshot, later bookings do not disturb it
+		Stream<String> before = mgr.appointmentsBetween("2023-06-26", "2023-06-29");
+		mgr.setAppointment("LRARSS87G64A341J","Laura","Rossi","AH876","2023-06-26","10:00-10:20");
+		assertEquals(5, before.count());
+
+		// visitors receive the same data as the listings, in time order
+		StringBuilder sb = new StringBuilder();
+		mgr.visitAppointments(CODE, "2023-06-28", (start, id, ssn)->sb.append(start).append('/').append(id).append(' '));
+		assertEquals("600/"+a2+" 640/"+a1+" ", sb.toString());
+		int[] slots = new int[1];
+		mgr.visitSlots("2023-06-28", "Cardiology", (doc, start, end)->slots[0] += end-start);
+		assertEquals(2*120, slots[0]);
+	}
+
+	@Test
+	public void testCancel() throws MedException {
+		String a1 = mgr.setAppointment(SSN,"Giovanni","Bianchi",CODE,"2023-06-28","10:40-11:00");
+		// the slot is taken
+		assertThrows(MedException.class,
+				()-> mgr.setAppointment("LRARSS87G64A341J","Laura","Rossi",CODE,"2023-06-28","10:40-11:00"));
+
+		mgr.setCurrentDate("2023-06-28");
+		mgr.accept(SSN);
+		assertEquals(a1, mgr.nextAppointment(CODE));
+
+		mgr.cancelAppointment(a1);
+		assertNull(mgr.nextAppointment(CODE));
+		assertEquals(0, mgr.listAppointments(CODE, "2023-06-28").size());
+		assertEquals(0.0, mgr.scheduleCompleteness().get(CODE), 0.0001);
+		assertThrows(MedException.class, ()-> mgr.cancelAppointment(a1));
+
+		// the slot is available again, ids are not reused
+		String a2 = mgr.setAppointment("LRARSS87G64A341J","Laura","Rossi",CODE,"2023-06-28","10:40-11:00");
+		assertNotEquals(a1, a2);
+		assertEquals(1, mgr.setCurrentDate("2023-06-28"));
+	}
+
+	@Test
+	public void testReschedule() throws MedException {
+		String a1 = mgr.setAppointment(SSN,"Giovanni","Bianchi",CODE,"2023-06-28","10:40-11:00");
+		String a2 = mgr.setAppointment("LRARSS87G64A341J","Laura","Rossi",CODE,"2023-06-28","10:00-10:20");
+
+		// target slot taken: nothing changes
+		assertThrows(MedException.class, ()-> mgr.rescheduleAppointment(a1, CODE, "2023-06-28", "10:00-10:20"));
+		assertThrows(MedException.class, ()-> mgr.rescheduleAppointment(a1, CODE, "2023-06-30", "10:00-10:20"));
+		assertEquals("10:40", mgr.getAppointmentTime(a1));
+
+		mgr.rescheduleAppointment(a1, "AH876", "2023-06-29", "11:20-11:40");
+		assertEquals("AH876", mgr.getAppointmentDoctor(a1));
+		assertEquals("2023-06-29", mgr.getAppointmentDate(a1));
+		assertEquals("11:20", mgr.getAppointmentTime(a1));
+		assertEquals(List.of("10:00=LRARSS87G64A341J"), mgr.listAppointments(CODE, "2023-06-28"));
+		assertEquals(List.of("11:20="+SSN), mgr.listAppointments("AH876", "2023-06-29"));
+
+		// the old slot can be booked again
+		String a3 = mgr.setAppointment("BNCLRA90A41F205X","Lara","Bianco",CODE,"2023-06-28","10:40-11:00");
+		assertTrue(mgr.listAppointments(CODE, "2023-06-28").contains("10:40=BNCLRA90A41F205X"));
+
+		// counters follow the appointments
+		assertEquals(2.0/24, mgr.scheduleCompleteness().get(CODE), 0.0001);
+		assertEquals(1.0/24, mgr.scheduleCompleteness().get("AH876"), 0.0001);
+
+		mgr.setCurrentDate("2023-06-28");
+		mgr.accept("LRARSS87G64A341J");
+		mgr.accept(SSN);
+		assertEquals(a2, mgr.nextAppointment(CODE));
+		assertNull(mgr.nextAppointment("AH876"));
+		assertNotEquals(a2, a3);
+	}
+
+	@Test
+	public void testAnalytics() throws MedException {
+		mgr.addSpecialities("Orthopedy");
+		mgr.addDoctor("OK358","Jack","Bones","Orthopedy");
+		mgr.addDailySchedule("OK358", "2023-06-28", "09:00", "11:00", 30);
+
+		mgr.setAppointment(SSN,"Giovanni","Bianchi",CODE,"2023-06-28","10:40-11:00");
+		mgr.setAppointment("LRARSS87G64A341J","Laura","Rossi",CODE,"2023-06-28","10:00-10:20");
+		mgr.setAppointment("BNCLRA90A41F205X","Lara","Bianco",CODE,"2023-06-27","10:00-10:20");
+		mgr.setAppointment("LRARSS87G64A341J","Laura","Rossi","AH876","2023-06-28","11:00-11:20");
+		mgr.setAppointment("BNCLRA90A41F205X","Lara","Bianco","OK358","2023-06-28","09:00-09:30");
+		mgr.setAppointment(SSN,"Giovanni","Bianchi",CODE,"2023-06-29","10:00-10:20");
+
+		mgr.setCurrentDate("2023-06-28");
+		mgr.accept(SSN);
+		mgr.accept("LRARSS87G64A341J");
+
+		Map<String,Long> busiest = mgr.busiestDoctors("2023-06-27", "2023-06-28", 2);
+		assertEquals(List.of(CODE, "AH876"), new ArrayList<>(busiest.keySet()));
+		assertEquals(3L, (long) busiest.get(CODE));
+		assertEquals(3, mgr.busiestDoctors("2023-06-27", "2023-06-28", Integer.MAX_VALUE).size());
+		assertTrue(mgr.busiestDoctors("2023-06-27", "2023-06-28", 0).isEmpty());
+		assertThrows(IllegalArgumentException.class, ()-> mgr.busiestDoctors("2023-06-27", "2023-06-28", -1));
+
+		// no appointment has been marked yet
+		assertTrue(mgr.highestNoShowRate("2023-06-27", "2023-06-28", 10).values().stream().allMatch(r->r == 0));
+		// the clock is past all the slots, the patients not accepted did not show up
+		assertEquals(3, mgr.detectNoShows());
+		Map<String,Double> noShow = mgr.highestNoShowRate("2023-06-27", "2023-06-28", 10);
+		assertEquals(List.of("OK358", CODE, "AH876"), new ArrayList<>(noShow.keySet()));
+		assertEquals(1.0/3, noShow.get(CODE), 0.0001);
+
+		// 12 slots over two days minus 1 appointment
+		assertEquals(List.of("AH876"), new ArrayList<>(mgr.mostIdleDoctors("2023-06-27", "2023-06-28", 1).keySet()));
+		assertEquals(11L, (long) mgr.mostIdleDoctors("2023-06-27", "2023-06-28", 1).get("AH876"));
+
+		Map<String,Double> specs = mgr.leastUtilisedSpecialities("2023-06-27", "2023-06-28", 5);
+		assertEquals(List.of("Cardiology", "Orthopedy"), new ArrayList<>(specs.keySet()));
+		assertEquals(4.0/24, specs.get("Cardiology"), 0.0001);
+		assertEquals(0.25, specs.get("Orthopedy"), 0.0001);
+
+		assertTrue(mgr.busiestDoctors("2023-06-28", "2023-06-27", 3).isEmpty());
+	}
+
+	@Test
+	public void testBookEarliest() throws MedException {
+		String a1 = mgr.bookEarliest(SSN,"Giovanni","Bianchi","Cardiology","2023-06-27");
+		String a2 = mgr.bookEarliest("LRARSS87G64A341J","Laura","Rossi","Cardiology","2023-06-27");
+		// same time, load spread over the two doctors
+		assertEquals("2023-06-27", mgr.getAppointmentDate(a1));
+		assertEquals("10:00", mgr.getAppointmentTime(a2));
+		assertNotEquals(mgr.getAppointmentDoctor(a1), mgr.getAppointmentDoctor(a2));
+		assertEquals("10:20", mgr.getAppointmentTime(mgr.bookEarliest(SSN,"Giovanni","Bianchi","Cardiology","2023-06-27")));
+
+		// a cancelled slot is the earliest again
+		mgr.cancelAppointment(a1);
+		assertEquals("10:00", mgr.getAppointmentTime(mgr.bookEarliest(SSN,"Giovanni","Bianchi","Cardiology","2023-06-27")));
+
+		// nothing after the last schedule, until a weekly schedule comes
+		assertNull(mgr.bookEarliest(SSN,"Giovanni","Bianchi","Cardiology","2023-06-30"));
+		mgr.addWeeklySchedule("AH876", DayOfWeek.MONDAY, "09:00", "10:00", 30, "2023-07-01", "2023-07-31");
+		String a3 = mgr.bookEarliest(SSN,"Giovanni","Bianchi","Cardiology","2023-06-30");
+		assertEquals("2023-07-03", mgr.getAppointmentDate(a3));
+		assertEquals("09:00", mgr.getAppointmentTime(a3));
+		mgr.addScheduleException("AH876", "2023-07-10");
+		mgr.bookEarliest(SSN,"Giovanni","Bianchi","Cardiology","2023-06-30");
+		assertEquals("2023-07-17", mgr.getAppointmentDate(mgr.bookEarliest(SSN,"Giovanni","Bianchi","Cardiology","2023-06-30")));
+
+		assertThrows(MedException.class, ()-> mgr.bookEarliest(SSN,"Giovanni","Bianchi","Pediatry","2023-06-30"));
+	}
+
+	@Test
+	public void testConcurrentBookEarliest() throws InterruptedException {
+		// 4 days x 2 doctors x 6 slots
+		ConcurrentLinkedQueue<String> booked = new ConcurrentLinkedQueue<>();
+		Thread[] threads = new Thread[8];
+		for (int t=0; t<threads.length; t++) {
+			threads[t] = new Thread(()->{
+				try {
+					String id;
+					while ((id = mgr.bookEarliest(SSN,"Giovanni","Bianchi","Cardiology","2023-06-26")) != null)
+						booked.add(id);
+				} catch (MedException e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		assertEquals(48, booked.size());
+		Set<String> slots = new HashSet<>();
+		for (String id : booked) {
+			assertNotNull(id);
+			slots.add(mgr.getAppointmentDoctor(id)+mgr.getAppointmentDate(id)+mgr.getAppointmentTime(id));
+		}
+		assertEquals(48, slots.size());
+	}
+
+	@Test
+	public void testWaitlist() throws MedException {
+		// fill 2023-06-28 for both doctors
+		List<String> apps = new ArrayList<>();
+		for (int i=0; i<12; i++)
+			apps.add(mgr.bookEarliest(SSN,"Giovanni","Bianchi","Cardiology","2023-06-28"));
+		assertEquals("2023-06-29", mgr.getAppointmentDate(mgr.bookEarliest(SSN,"Giovanni","Bianchi","Cardiology","2023-06-29")));
+
+		// a slot is still free on 06-29: booked at once
+		int t0 = mgr.joinWaitlist("MRARSS70A01H501Z","Mario","Rossi","Cardiology","2023-06-29","2023-06-29",0);
+		assertNotNull(mgr.getWaitlistAppointment(t0));
+
+		int t1 = mgr.joinWaitlist("LRARSS87G64A341J","Laura","Rossi","Cardiology","2023-06-28","2023-06-28",0);
+		int t2 = mgr.joinWaitlist("BNCLRA90A41F205X","Lara","Bianco","Cardiology","2023-06-28","2023-06-28",5);
+		int t3 = mgr.joinWaitlist("VRDGPP80A01H501X","Giuseppe","Verdi","Cardiology","2023-07-01","2023-07-05",0);
+		assertNull(mgr.getWaitlistAppointment(t1));
+		assertEquals(3, mgr.waitlistSize("Cardiology"));
+
+		// released slot goes to the highest priority
+		mgr.cancelAppointment(apps.get(3));
+		String a2 = mgr.getWaitlistAppointment(t2);
+		assertNotNull(a2);
+		assertEquals("BNCLRA90A41F205X", mgr.getAppointmentPatient(a2));
+		assertNull(mgr.getWaitlistAppointment(t1));
+
+		// new schedule: first slot to the next in line, within its range
+		assertEquals(2, mgr.addDailySchedule(CODE, "2023-06-28", "15:00", "16:00", 30));
+		String a1 = mgr.getWaitlistAppointment(t1);
+		assertEquals("15:00", mgr.getAppointmentTime(a1));
+		assertNull(mgr.getWaitlistAppointment(t3));
+
+		// weekly schedule within the range of the last request
+		mgr.addWeeklySchedule("AH876", DayOfWeek.MONDAY, "09:00", "10:00", 30, "2023-07-01", "2023-07-31");
+		assertEquals("2023-07-03", mgr.getAppointmentDate(mgr.getWaitlistAppointment(t3)));
+		assertEquals(0, mgr.waitlistSize("Cardiology"));
+
+		int t4 = mgr.joinWaitlist(SSN,"Giovanni","Bianchi","Cardiology","2023-06-26","2023-06-26",0);
+		assertNotNull(mgr.getWaitlistAppointment(t4));
+		int t5 = mgr.joinWaitlist(SSN,"Giovanni","Bianchi","Cardiology","2023-06-20","2023-06-21",0);
+		mgr.leaveWaitlist(t5);
+		assertEquals(0, mgr.waitlistSize("Cardiology"));
+		// tickets no longer waiting still answer
+		assertNull(mgr.getWaitlistAppointment(t5));
+		assertEquals(a1, mgr.getWaitlistAppointment(t1));
+		assertThrows(MedException.class, ()-> mgr.getWaitlistAppointment(99));
+		assertThrows(MedException.class, ()-> mgr.joinWaitlist(SSN,"Giovanni","Bianchi","Cardiology","2023-08-01","2023-08-xx",0));
+
+		// a weekly schedule serves each waiting range on its own dates, by priority
+		int t6 = mgr.joinWaitlist("LRARSS87G64A341J","Laura","Rossi","Cardiology","2023-08-08","2023-08-20",0);
+		int t7 = mgr.joinWaitlist("BNCLRA90A41F205X","Lara","Bianco","Cardiology","2023-08-01","2023-08-02",0);
+		int t8 = mgr.joinWaitlist("MRARSS70A01H501Z","Mario","Rossi","Cardiology","2023-08-01","2023-08-31",3);
+		mgr.addWeeklySchedule("AH876", DayOfWeek.TUESDAY, "09:00", "09:30", 30, "2023-08-01", "2023-08-31");
+		assertEquals("2023-08-01", mgr.getAppointmentDate(mgr.getWaitlistAppointment(t8)));
+		assertEquals("2023-08-08", mgr.getAppointmentDate(mgr.getWaitlistAppointment(t6)));
+		assertNull(mgr.getWaitlistAppointment(t7));
+		assertEquals(1, mgr.waitlistSize("Cardiology"));
+	}
+
+	@Test
+	public void testLargeHistory() throws MedException {
+		// more appointments than the initial capacity of the store
+		mgr.addWeeklySchedule(CODE, DayOfWeek.MONDAY, "08:00", "20:00", 10,
+				"2023-07-03", "2023-09-25");
+		List<String> ids = new ArrayList<>();
+		String id;
+		while ((id = mgr.bookEarliest(SSN,"Giovanni","Bianchi","Cardiology","2023-07-01")) != null)
+			ids.add(id);
+		assertEquals(13*72, ids.size());
+		assertEquals(ids, mgr.appointmentsBetween(CODE, "2023-07-01", "2023-09-30").collect(Collectors.toList()));
+
+		String last = ids.get(ids.size()-1);
+		assertEquals("2023-09-25", mgr.getAppointmentDate(last));
+		assertEquals("19:50", mgr.getAppointmentTime(last));
+		assertEquals(SSN, mgr.getAppointmentPatient(last));
+
+		// ids are not reused after a cancellation
+		mgr.cancelAppointment(ids.get(100));
+		assertThrows(MedException.class, ()-> mgr.cancelAppointment(ids.get(100)));
+		String again = mgr.bookEarliest("LRARSS87G64A341J","Laura","Rossi","Cardiology","2023-07-01");
+		assertNotEquals(ids.get(100), again);
+		assertEquals("2023-07-10", mgr.getAppointmentDate(again));
+		assertEquals("12:40", mgr.getAppointmentTime(again));
+		assertEquals(ids.size(), mgr.appointmentsBetween("2023-07-01", "2023-09-30").count());
+	}
+}
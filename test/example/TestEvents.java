@@ -0,0 +1,89 @@
+package example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class TestEvents {
+
+	private static final List<String> EVENTS = List.of("it.polito.med.SetAppointment", "it.polito.med.Accept",
+			"it.polito.med.NextAppointment", "it.polito.med.CompleteAppointment",
+			"it.polito.med.FindSlots", "it.polito.med.DailySchedule");
+
+	private static void run(MedManager mgr) throws MedException {
+		mgr.addSpecialities("Cardiology");
+		mgr.addDoctor("XD345","John","Smith","Cardiology");
+		mgr.addDailySchedule("XD345", "2023-06-28", "10:00", "12:00", 20);
+		mgr.findSlots("2023-06-28", "Cardiology");
+		String a1 = mgr.setAppointment("GVNBNC80B14F219K","Giovanni","Bianchi","XD345","2023-06-28","10:40-11:00");
+		assertThrows(MedException.class,
+				()-> mgr.setAppointment("LRARSS87G64A341J","Laura","Rossi","XD345","2023-06-28","10:40-11:00"));
+		mgr.setCurrentDate("2023-06-28");
+		mgr.accept("GVNBNC80B14F219K");
+		mgr.completeAppointment("XD345", mgr.nextAppointment("XD345"));
+		assertNull(mgr.nextAppointment("XD345"));
+		assertEquals("1", a1);
+	}
+
+	@Test
+	public void testEventsRecorded() throws Exception {
+		Path file = Files.createTempFile("med", ".jfr");
+		try (Recording r = new Recording()) {
+			for (String e : EVENTS)
+				r.enable(e).withThreshold(Duration.ZERO);
+			r.start();
+			run(new MedManager());
+			r.stop();
+			r.dump(file);
+
+			Map<String, List<RecordedEvent>> events = RecordingFile.readAllEvents(file).stream()
+					.filter(e->e.getEventType().getName().startsWith("it.polito.med."))
+					.collect(Collectors.groupingBy(e->e.getEventType().getName()));
+			assertEquals(EVENTS.size(), events.size());
+
+			List<RecordedEvent> bookings = events.get("it.polito.med.SetAppointment");
+			assertEquals(2, bookings.size());
+			assertEquals("1", bookings.get(0).getString("appointment"));
+			assertEquals("XD345", bookings.get(0).getString("doctor"));
+			assertEquals("10:40-11:00", bookings.get(0).getString("slot"));
+			// the rejected booking has no appointment
+			assertNull(bookings.get(1).getString("appointment"));
+			assertFalse(bookings.get(0).getDuration().isNegative());
+
+			assertEquals(6, events.get("it.polito.med.DailySchedule").get(0).getInt("slots"));
+			assertEquals(6, events.get("it.polito.med.FindSlots").get(0).getInt("slots"));
+			assertEquals(1, events.get("it.polito.med.Accept").get(0).getInt("accepted"));
+			assertEquals(2, events.get("it.polito.med.NextAppointment").size());
+			assertTrue(events.get("it.polito.med.CompleteAppointment").get(0).getBoolean("completed"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testDisabledByDefault() throws MedException {
+		run(new MedManager());
+		for (EventType t : FlightRecorder.getFlightRecorder().getEventTypes())
+			if (EVENTS.contains(t.getName()))
+				assertFalse(t.isEnabled());
+	}
+}
@@ -0,0 +1,176 @@
+package example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+
+public class TestExport {
+
+	private MedManager mgr;
+	private Path dir;
+
+	@Before
+	public void setUp() throws MedException, IOException {
+		dir = Files.createTempDirectory("med-export");
+		mgr = new MedManager();
+		mgr.addSpecialities("Cardiology");
+		mgr.addDoctor("XD345","John","Smith","Cardiology");
+		mgr.addDoctor("AH876","Jane","Black","Cardiology");
+		mgr.addDailySchedule("XD345", "2023-06-28", "10:00", "11:00", 20);
+		mgr.addWeeklySchedule("AH876", DayOfWeek.MONDAY, "09:00", "10:00", 30, "2023-06-26", "2023-07-10");
+		mgr.setAppointment("GVNBNC80B14F219K","Giovanni","Bianchi","XD345","2023-06-28","10:40-11:00");
+		mgr.setAppointment("LRARSS87G64A341J","Laura","Rossi, jr","XD345","2023-06-28","10:00-10:20");
+		mgr.setAppointment("GVNBNC80B14F219K","Giovanni","Bianchi","AH876","2023-07-03","09:30-10:00");
+		mgr.setCurrentDate("2023-06-28");
+		mgr.accept("LRARSS87G64A341J");
+	}
+
+	private void complete() throws MedException {
+		mgr.completeAppointment("XD345", mgr.nextAppointment("XD345"));
+		// the clock is past all the slots
+		mgr.detectNoShows();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (Path p : Files.list(dir).toArray(Path[]::new))
+			Files.delete(p);
+		Files.delete(dir);
+	}
+
+	@Test
+	public void testCsv() throws IOException, MedException {
+		mgr.setAppointment("MLLZOE90A41Z112K","Zoë","Müller \"\uD83D\uDE00\"","AH876","2023-07-10","09:00-09:30");
+		Path apps = dir.resolve("apps.csv");
+		assertEquals(4, mgr.exportAppointmentsCsv(apps));
+		List<String> lines = Files.readAllLines(apps);
+		assertEquals(5, lines.size());
+		assertEquals("2,XD345,LRARSS87G64A341J,Laura,\"Rossi, jr\",2023-06-28,10:00,10:20,true,false,false", lines.get(1));
+		assertEquals("3,AH876,GVNBNC80B14F219K,Giovanni,Bianchi,2023-07-03,09:30,10:00,false,false,false", lines.get(3));
+		assertEquals("4,AH876,MLLZOE90A41Z112K,Zoë,\"Müller \"\"\uD83D\uDE00\"\"\",2023-07-10,09:00,09:30,false,false,false", lines.get(4));
+
+		Path slots = dir.resolve("slots.csv");
+		// 3 slots on wednesday, 2 on each of the three mondays
+		assertEquals(9, mgr.exportSchedulesCsv(slots));
+		assertTrue(Files.readAllLines(slots).contains("AH876,2023-07-03,09:30,10:00,true"));
+	}
+
+	@Test
+	public void testNamesPerBooking() throws IOException, MedException {
+		// the same patient booking under other names does not rewrite the earlier bookings
+		mgr.setAppointment("GVNBNC80B14F219K","Giovanni","Bianchi Verdi","AH876","2023-07-10","09:30-10:00");
+		mgr.rescheduleAppointment("3", "AH876", "2023-07-10", "09:00-09:30");
+		Path apps = dir.resolve("apps.csv");
+		assertEquals(4, mgr.exportAppointmentsCsv(apps));
+		List<String> lines = Files.readAllLines(apps);
+		assertEquals("1,XD345,GVNBNC80B14F219K,Giovanni,Bianchi,2023-06-28,10:40,11:00,false,false,false", lines.get(2));
+		assertEquals("3,AH876,GVNBNC80B14F219K,Giovanni,Bianchi,2023-07-10,09:00,09:30,false,false,false", lines.get(3));
+		assertEquals("4,AH876,GVNBNC80B14F219K,Giovanni,Bianchi Verdi,2023-07-10,09:30,10:00,false,false,false", lines.get(4));
+	}
+
+	@Test
+	public void testColumnar() throws IOException, MedException {
+		complete();
+		Path file = dir.resolve("med.col");
+		assertEquals(12, mgr.exportColumnar(file));
+
+		List<String> rows = readColumnar(file, new ArrayList<>());
+		assertEquals(12, rows.size());
+		// accepted and completed, no-show
+		assertEquals("2 XD345 LRARSS87G64A341J 2023-06-28 600 20 5", rows.get(0));
+		assertEquals("1 XD345 GVNBNC80B14F219K 2023-06-28 640 20 2", rows.get(1));
+		assertEquals("3 AH876 GVNBNC80B14F219K 2023-07-03 570 30 2", rows.get(2));
+		assertTrue(rows.contains("AH876 2023-07-03 570 30 1"));
+		assertTrue(rows.contains("XD345 2023-06-28 620 20 0"));
+	}
+
+	@Test
+	public void testColumnarNamesPerBooking() throws IOException, MedException {
+		// the same ssn under other names gets its own entry, as in the store
+		mgr.setAppointment("GVNBNC80B14F219K","Giovanni","Bianchi Verdi","AH876","2023-07-10","09:30-10:00");
+		Path file = dir.resolve("med.col");
+		assertEquals(13, mgr.exportColumnar(file));
+		List<String> patients = new ArrayList<>();
+		assertEquals(13, readColumnar(file, patients).size());
+		assertEquals(List.of("LRARSS87G64A341J Laura Rossi, jr", "GVNBNC80B14F219K Giovanni Bianchi",
+				"GVNBNC80B14F219K Giovanni Bianchi Verdi"), patients);
+	}
+
+	@Test
+	public void testCsvQuoting() throws IOException, MedException {
+		// carriage returns are quoted as well as line feeds
+		mgr.setAppointment("MLLZOE90A41Z112K","Zoë","Müller\r","AH876","2023-07-10","09:00-09:30");
+		Path apps = dir.resolve("apps.csv");
+		assertEquals(4, mgr.exportAppointmentsCsv(apps));
+		String csv = Files.readString(apps);
+		assertTrue(csv.contains("Zoë,\"Müller\r\",2023-07-10,09:00,09:30,false,false,false\n"));
+	}
+
+	// rows of a columnar file as text, the patients of the dictionary as ssn, name and surname
+	private static List<String> readColumnar(Path file, List<String> patients) throws IOException {
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+		assertEquals(0x4D454443, in.getInt());
+		assertEquals(2, in.getInt());
+		List<String> doctors = new ArrayList<>();
+		List<String> rows = new ArrayList<>();
+		byte type;
+		while ((type = in.get()) != 0) {
+			int n = varInt(in);
+			for (int i=varInt(in); i>0; i--)
+				doctors.add(string(in));
+			for (int i=varInt(in); i>0; i--)
+				patients.add(string(in)+" "+string(in)+" "+string(in));
+			boolean[] deltas = type == 1
+					? new boolean[] {true, false, false, true, true, false, false}
+					: new boolean[] {false, true, true, false, false};
+			int[][] cols = new int[deltas.length][n];
+			for (int c=0; c<deltas.length; c++) {
+				int end = varInt(in) + in.position(), prev = 0;
+				for (int r=0; r<n; r++) {
+					int v = varInt(in);
+					cols[c][r] = deltas[c] ? (prev += (v >>> 1) ^ -(v & 1)) : v;
+				}
+				assertEquals(end, in.position());
+			}
+			for (int r=0; r<n; r++)
+				rows.add(type == 1
+						? cols[0][r]+" "+doctors.get(cols[1][r])+" "+patients.get(cols[2][r]).split(" ")[0]+" "
+								+LocalDate.ofEpochDay(cols[3][r])+" "+cols[4][r]+" "+cols[5][r]+" "+cols[6][r]
+						: doctors.get(cols[0][r])+" "+LocalDate.ofEpochDay(cols[1][r])+" "
+								+cols[2][r]+" "+cols[3][r]+" "+cols[4][r]);
+		}
+		return rows;
+	}
+
+	private static int varInt(ByteBuffer in) {
+		int v = 0, shift = 0, b;
+		do {
+			b = in.get();
+			v |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return v;
+	}
+
+	private static String string(ByteBuffer in) {
+		byte[] b = new byte[varInt(in)];
+		in.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+}
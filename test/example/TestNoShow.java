@@ -0,0 +1,152 @@
+package example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+
+public class TestNoShow {
+
+	// clock moved by hand
+	private static class ManualClock extends Clock {
+		private Instant now;
+
+		ManualClock(LocalDateTime t) {
+			set(t);
+		}
+
+		void set(LocalDateTime t) {
+			now = t.toInstant(ZoneOffset.UTC);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+
+	private static final String CODE = "XD345";
+	private ManualClock clock;
+	private MedManager mgr;
+
+	@Before
+	public void setUp() throws MedException {
+		clock = new ManualClock(LocalDateTime.of(2023, 6, 1, 8, 0));
+		mgr = new MedManager(clock);
+		mgr.addSpecialities("Cardiology");
+		mgr.addDoctor(CODE,"John","Smith","Cardiology");
+		mgr.addDailySchedule(CODE, "2023-06-28", "10:00", "12:00", 20);
+	}
+
+	@Test
+	public void testNoShows() throws MedException {
+		String a1 = mgr.setAppointment("GVNBNC80B14F219K","Giovanni","Bianchi",CODE,"2023-06-28","10:00-10:20");
+		String a2 = mgr.setAppointment("LRARSS87G64A341J","Laura","Rossi",CODE,"2023-06-28","10:20-10:40");
+		String a3 = mgr.setAppointment("BNCLRA90A41F205X","Lara","Bianco",CODE,"2023-06-28","11:00-11:20");
+		String a4 = mgr.setAppointment("MRARSS70A01H501Z","Mario","Rossi",CODE,"2023-06-28","11:40-12:00");
+
+		// weeks later, before the first slot ends
+		clock.set(LocalDateTime.of(2023, 6, 28, 10, 19));
+		assertEquals(0, mgr.detectNoShows());
+		mgr.setCurrentDate("2023-06-28");
+		mgr.accept("GVNBNC80B14F219K");
+
+		clock.set(LocalDateTime.of(2023, 6, 28, 10, 40));
+		// a1 accepted, a2 over
+		assertEquals(1, mgr.detectNoShows());
+		mgr.accept("LRARSS87G64A341J");
+		assertEquals(a1, mgr.nextAppointment(CODE));
+		mgr.completeAppointment(CODE, a1);
+		assertNull(mgr.nextAppointment(CODE));
+
+		// a3 moved later, a4 cancelled: no no-show for them at 11:20
+		mgr.rescheduleAppointment(a3, CODE, "2023-06-28", "11:20-11:40");
+		mgr.cancelAppointment(a4);
+		clock.set(LocalDateTime.of(2023, 6, 28, 11, 30));
+		assertEquals(0, mgr.detectNoShows());
+
+		clock.set(LocalDateTime.of(2023, 7, 15, 0, 0));
+		assertEquals(1, mgr.detectNoShows());
+		assertEquals(2, mgr.noShowCount(CODE));
+		assertEquals(2, mgr.noShowCount());
+		assertEquals(1.0/3, mgr.showRate(CODE, "2023-06-28"), 0.001);
+		assertFalse(mgr.isNoShow(a1));
+		assertTrue(mgr.isNoShow(a2));
+		assertTrue(mgr.isNoShow(a3));
+	}
+
+	@Test
+	public void testCancelNoShow() throws MedException {
+		String a1 = mgr.setAppointment("GVNBNC80B14F219K","Giovanni","Bianchi",CODE,"2023-06-28","10:00-10:20");
+		mgr.setAppointment("LRARSS87G64A341J","Laura","Rossi",CODE,"2023-06-28","10:20-10:40");
+		clock.set(LocalDateTime.of(2023, 6, 28, 11, 0));
+		assertEquals(2, mgr.detectNoShows());
+		assertEquals(2, mgr.noShowCount(CODE));
+
+		// the cancelled no-show leaves the counters and the show rate
+		mgr.cancelAppointment(a1);
+		assertEquals(1, mgr.noShowCount(CODE));
+		assertEquals(1, mgr.noShowCount());
+		assertEquals(0.0, mgr.showRate(CODE, "2023-06-28"), 0.001);
+		assertEquals(0, mgr.detectNoShows());
+		assertEquals(1, mgr.noShowCount());
+	}
+
+	@Test
+	public void testFarAndPastDeadlines() throws MedException {
+		mgr.addDailySchedule(CODE, "2023-05-02", "10:00", "10:20", 20);
+		mgr.addDailySchedule(CODE, "2026-03-02", "10:00", "10:20", 20);
+		mgr.setAppointment("GVNBNC80B14F219K","Giovanni","Bianchi",CODE,"2023-05-02","10:00-10:20");
+		mgr.setAppointment("LRARSS87G64A341J","Laura","Rossi",CODE,"2026-03-02","10:00-10:20");
+
+		// already over when booked
+		assertEquals(1, mgr.detectNoShows());
+		clock.set(LocalDateTime.of(2026, 3, 2, 10, 19));
+		assertEquals(0, mgr.detectNoShows());
+		clock.set(LocalDateTime.of(2026, 3, 2, 10, 20));
+		assertEquals(1, mgr.detectNoShows());
+	}
+
+	@Test
+	public void testLongJumps() throws MedException {
+		// deadlines on every level of the wheel and beyond it
+		String[] dates = {"2023-06-02", "2024-01-15", "2031-09-09", "2060-02-03"};
+		for (int i=0; i<dates.length; i++) {
+			mgr.addDailySchedule(CODE, dates[i], "10:00", "10:20", 20);
+			mgr.setAppointment("SSN"+i,"N","S",CODE,dates[i],"10:00-10:20");
+		}
+		clock.set(LocalDateTime.of(2023, 6, 2, 10, 20));
+		assertEquals(1, mgr.detectNoShows());
+		clock.set(LocalDateTime.of(2031, 9, 9, 10, 19));
+		assertEquals(1, mgr.detectNoShows());
+		clock.set(LocalDateTime.of(2031, 9, 9, 10, 20));
+		assertEquals(1, mgr.detectNoShows());
+		clock.set(LocalDateTime.of(2060, 2, 3, 10, 19));
+		assertEquals(0, mgr.detectNoShows());
+		clock.set(LocalDateTime.of(2060, 2, 3, 10, 20));
+		assertEquals(1, mgr.detectNoShows());
+		assertEquals(4, mgr.noShowCount(CODE));
+	}
+}
@@ -0,0 +1,211 @@
+package example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+
+public class TestSchedule {
+
+	private MedManager mgr;
+
+	@Before
+	public void setUp() throws MedException {
+		mgr = new MedManager();
+		mgr.addSpecialities("Cardiology");
+		mgr.addDoctor("XD345","John","Smith","Cardiology");
+	}
+
+	@Test
+	public void testNonIsoDates() throws MedException {
+		// only yyyy-MM-dd dates are accepted, nothing is stored under another format
+		assertThrows(MedException.class, ()-> mgr.addDailySchedule("XD345", "28/06/2023", "10:00", "11:00", 20));
+		assertThrows(MedException.class, ()-> mgr.addDailySchedule("XD345", "2023-02-30", "10:00", "11:00", 20));
+		assertThrows(MedException.class, ()-> mgr.addDailySchedule("YY000", "2023-06-28", "10:00", "11:00", 20));
+		assertEquals(3, mgr.addDailySchedule("XD345", "2023-06-28", "10:00", "11:00", 20));
+		assertThrows(MedException.class, ()-> mgr.findSlots("2023-6-28", "Cardiology"));
+		assertThrows(MedException.class,
+				()-> mgr.setAppointment("GVNBNC80B14F219K","Giovanni","Bianchi","XD345","2023-6-28","10:00-10:20"));
+		assertThrows(MedException.class, ()-> mgr.listAppointments("XD345", "28/06/2023"));
+		assertThrows(MedException.class, ()-> mgr.setCurrentDate("tomorrow"));
+		assertThrows(MedException.class, ()-> mgr.showRate("XD345", "2023-06-2x"));
+		assertThrows(MedException.class, ()-> mgr.busiestDoctors("2023-06-01", "2023/06/30", 3));
+		assertEquals(0, mgr.setCurrentDate("2023-06-28"));
+	}
+
+	@Test
+	public void testWeeklySchedule() throws MedException {
+		// every monday of 2024, 09:00-12:00 every 30 minutes
+		int perDay = mgr.addWeeklySchedule("XD345", DayOfWeek.MONDAY, "09:00", "12:00", 30, "2024-01-01", "2024-12-31");
+		assertEquals(6, perDay);
+
+		Map<String,List<String>> slots = mgr.findSlots("2024-03-04","Cardiology");
+		assertEquals(1, slots.size());
+		assertEquals(6, slots.get("XD345").size());
+		assertTrue(slots.get("XD345").contains("11:30-12:00"));
+		// a tuesday
+		assertTrue(mgr.findSlots("2024-03-05","Cardiology").isEmpty());
+
+		String id = mgr.setAppointment("GVNBNC80B14F219K","Giovanni","Bianchi","XD345","2024-05-13","09:30-10:00");
+		assertEquals("2024-05-13", mgr.getAppointmentDate(id));
+
+		// 2024 has 53 mondays
+		assertEquals(1.0/(53*6), mgr.scheduleCompleteness().get("XD345"), 0.0001);
+
+		// holiday and explicit schedule replace the template
+		mgr.addScheduleException("XD345", "2024-04-01");
+		assertTrue(mgr.findSlots("2024-04-01","Cardiology").isEmpty());
+		mgr.addDailySchedule("XD345", "2024-04-08", "14:00", "15:00", 20);
+		assertEquals(List.of("14:00-14:20","14:20-14:40","14:40-15:00"), mgr.findSlots("2024-04-08","Cardiology").get("XD345"));
+		assertEquals(1.0/(51*6+3), mgr.scheduleCompleteness().get("XD345"), 0.0001);
+
+		// a holiday cannot drop booked slots
+		String booked = mgr.setAppointment("LRARSS87G64A341J","Laura","Rossi","XD345","2024-03-11","09:00-09:30");
+		assertThrows(MedException.class, ()-> mgr.addScheduleException("XD345", "2024-03-11"));
+		assertEquals(6, mgr.findSlots("2024-03-11","Cardiology").get("XD345").size());
+		assertEquals(List.of("09:00="+"LRARSS87G64A341J"), new ArrayList<>(mgr.listAppointments("XD345", "2024-03-11")));
+		mgr.cancelAppointment(booked);
+		mgr.addScheduleException("XD345", "2024-03-11");
+		assertTrue(mgr.findSlots("2024-03-11","Cardiology").isEmpty());
+		assertEquals(1.0/(50*6+3), mgr.scheduleCompleteness().get("XD345"), 0.0001);
+
+		assertThrows(MedException.class,
+				()-> mgr.addWeeklySchedule("XX000", DayOfWeek.MONDAY, "09:00", "12:00", 30, "2024-01-01", "2024-12-31"));
+		assertFalse(mgr.findSlots("2025-01-06","Cardiology").containsKey("XD345"));
+	}
+
+	@Test
+	public void testBlockOverBookedTemplateDay() throws MedException {
+		mgr.addWeeklySchedule("XD345", DayOfWeek.MONDAY, "09:00", "12:00", 30, "2024-01-01", "2024-12-31");
+		mgr.setAppointment("P1","Giovanni","Bianchi","XD345","2024-03-04","09:00-09:30");
+
+		// the booked slot of the template cannot be redefined
+		assertEquals(0, mgr.addDailySchedule("XD345", "2024-03-04", "09:00", "10:00", 30));
+		assertThrows(MedException.class, ()-> mgr.setAppointment("P2","Laura","Rossi","XD345","2024-03-04","09:00-09:30"));
+
+		// an explicit block replaces the free slots of the template and keeps the booked one
+		assertEquals(2, mgr.addDailySchedule("XD345", "2024-03-04", "14:00", "15:00", 30));
+		assertEquals(List.of("09:00-09:30","14:00-14:30","14:30-15:00"), mgr.findSlots("2024-03-04","Cardiology").get("XD345"));
+		assertThrows(MedException.class, ()-> mgr.setAppointment("P2","Laura","Rossi","XD345","2024-03-04","09:00-09:30"));
+		assertEquals(List.of("09:00=P1"), new ArrayList<>(mgr.listAppointments("XD345", "2024-03-04")));
+		// 53 mondays, one of them with 3 slots
+		assertEquals(1.0/(52*6+3), mgr.scheduleCompleteness().get("XD345"), 0.0001);
+	}
+
+	@Test
+	public void testEarliestAcrossTemplateWeeks() throws MedException {
+		// one slot every monday of march 2024
+		mgr.addWeeklySchedule("XD345", DayOfWeek.MONDAY, "09:00", "09:30", 30, "2024-03-01", "2024-03-31");
+		// days used out of order and a holiday
+		mgr.findSlots("2024-03-18", "Cardiology");
+		mgr.addScheduleException("XD345", "2024-03-11");
+		List<String> dates = new ArrayList<>();
+		String id;
+		while ((id = mgr.bookEarliest("SSN"+dates.size(),"N","S","Cardiology","2024-03-01")) != null)
+			dates.add(mgr.getAppointmentDate(id));
+		assertEquals(List.of("2024-03-04", "2024-03-18", "2024-03-25"), dates);
+		assertNull(mgr.bookEarliest("SSN","N","S","Cardiology","2024-03-20"));
+	}
+
+	@Test
+	public void testMultiBlockDay() throws MedException {
+		// morning clinic every 20 minutes, afternoon every 45
+		assertEquals(6, mgr.addDailySchedule("XD345", "2024-03-04", "09:00", "11:00", 20));
+		assertEquals(3, mgr.addDailySchedule("XD345", "2024-03-04", "14:00", "16:30", 45));
+		// overlapping block is rejected
+		assertEquals(0, mgr.addDailySchedule("XD345", "2024-03-04", "10:30", "12:00", 30));
+		assertEquals(0, mgr.addDailySchedule("XD345", "2024-03-04", "08:00", "10:00", 30));
+		// adjacent block is fine
+		assertEquals(2, mgr.addDailySchedule("XD345", "2024-03-04", "11:00", "12:00", 30));
+
+		List<String> slots = mgr.findSlots("2024-03-04","Cardiology").get("XD345");
+		assertEquals(11, slots.size());
+		assertTrue(slots.contains("15:30-16:15"));
+		assertFalse(slots.contains("16:15-17:00"));
+
+		assertEquals("14:45-15:30", mgr.findSlotAt("XD345", "2024-03-04", "15:10"));
+		assertEquals("09:00-09:20", mgr.findSlotAt("XD345", "2024-03-04", "09:00"));
+		assertEquals(null, mgr.findSlotAt("XD345", "2024-03-04", "12:00"));
+		assertEquals(null, mgr.findSlotAt("XD345", "2024-03-04", "16:20"));
+
+		// zero duration used to loop forever
+		assertEquals(0, mgr.addDailySchedule("XD345", "2024-03-05", "09:00", "11:00", 0));
+		mgr.setAppointment("GVNBNC80B14F219K","Giovanni","Bianchi","XD345","2024-03-04","14:45-15:30");
+		assertEquals(1.0/11, mgr.scheduleCompleteness().get("XD345"), 0.0001);
+	}
+
+	@Test
+	public void testSlotsGrid() throws MedException {
+		mgr.addSpecialities("Orthopedy","Ecography");
+		mgr.addDoctor("AH876","Jane","Black","Cardiology");
+		mgr.addDoctor("OK358","Jack","Bones","Orthopedy");
+		mgr.addWeeklySchedule("XD345", DayOfWeek.MONDAY, "09:00", "12:00", 30, "2024-01-01", "2024-12-31");
+		mgr.addWeeklySchedule("AH876", DayOfWeek.WEDNESDAY, "14:00", "16:00", 20, "2024-01-01", "2024-12-31");
+		mgr.addDailySchedule("OK358", "2024-03-05", "09:00", "11:00", 30);
+		mgr.addDailySchedule("XD345", "2024-03-12", "15:00", "16:00", 15);
+		mgr.addScheduleException("AH876", "2024-03-13");
+
+		List<String> dates = new ArrayList<>();
+		for (LocalDate d = LocalDate.of(2024, 3, 4); d.isBefore(LocalDate.of(2024, 3, 18)); d = d.plusDays(1))
+			dates.add(d.toString());
+		List<String> specs = List.of("Cardiology","Orthopedy","Ecography");
+		Map<String, Map<String, Map<String, List<String>>>> grid = mgr.findSlotsGrid(dates, specs);
+
+		// each cell is what findSlots returns for its speciality and date
+		assertEquals(3, grid.size());
+		for (String spec : specs) {
+			assertEquals(14, grid.get(spec).size());
+			for (String date : dates)
+				assertEquals(mgr.findSlots(date, spec), grid.get(spec).get(date));
+		}
+		assertEquals(2, grid.get("Cardiology").get("2024-03-06").get("AH876").size() / 3);
+		assertTrue(grid.get("Cardiology").get("2024-03-13").isEmpty());
+		assertTrue(grid.get("Ecography").values().stream().allMatch(Map::isEmpty));
+	}
+
+	@Test
+	public void testSpecialities() throws MedException {
+		mgr.addSpecialities("Ophthalmology", "Cardiology", "Anaesthesia");
+		mgr.addDoctor("AB100","Mary","White","Cardiology");
+		mgr.addDoctor("ZZ900","Paul","Green","Cardiology");
+		mgr.addDoctor("EY111","Anna","Neri","Ophthalmology");
+
+		Collection<String> specs = mgr.getSpecialities();
+		assertEquals(List.of("Anaesthesia", "Cardiology", "Ophthalmology"), new ArrayList<>(specs));
+		assertThrows(UnsupportedOperationException.class, ()-> specs.add("Dermatology"));
+		// a snapshot, later additions are not visible
+		mgr.addSpecialities("Dermatology");
+		assertEquals(3, specs.size());
+		assertEquals(4, mgr.getSpecialities().size());
+
+		// ordered by id
+		Collection<String> cardiologists = mgr.getSpecialists("Cardiology");
+		assertEquals(List.of("AB100", "XD345", "ZZ900"), new ArrayList<>(cardiologists));
+		assertThrows(UnsupportedOperationException.class, ()-> cardiologists.remove("AB100"));
+		assertTrue(mgr.getSpecialists("Dermatology").isEmpty());
+		assertTrue(mgr.getSpecialists("Surgery").isEmpty());
+		assertThrows(MedException.class, ()-> mgr.addDoctor("SU001","Luca","Blu","Surgery"));
+
+		mgr.addDailySchedule("EY111", "2024-03-04", "09:00", "10:00", 30);
+		mgr.addDailySchedule("ZZ900", "2024-03-04", "09:00", "10:00", 30);
+		assertEquals(Map.of("EY111", List.of("09:00-09:30", "09:30-10:00")), mgr.findSlots("2024-03-04", "Ophthalmology"));
+		assertEquals(1, mgr.findSlots("2024-03-04", "Cardiology").size());
+		assertTrue(mgr.findSlots("2024-03-04", "Surgery").isEmpty());
+		assertTrue(mgr.bookEarliest("SSN1", "N", "S", "Ophthalmology", "2024-03-01") != null);
+		assertThrows(MedException.class, ()-> mgr.bookEarliest("SSN1", "N", "S", "Surgery", "2024-03-01"));
+	}
+}
@@ -0,0 +1,94 @@
+package example;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+import it.polito.med.MedServer;
+
+public class TestServer {
+
+	private final HttpClient client = HttpClient.newHttpClient();
+	private MedManager mgr;
+	private MedServer server;
+
+	@Before
+	public void setUp() throws MedException, IOException {
+		mgr = new MedManager();
+		mgr.addSpecialities("Cardiology", "Ophthalmology");
+		mgr.addDoctor("XD345", "John", "Smith", "Cardiology");
+		mgr.addDailySchedule("XD345", "2023-06-28", "10:00", "11:00", 20);
+		server = new MedServer(mgr, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+	}
+
+	@After
+	public void tearDown() {
+		server.close();
+	}
+
+	private HttpResponse<String> send(String method, String pathAndQuery, String form) throws IOException, InterruptedException {
+		HttpRequest.Builder b = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + pathAndQuery));
+		if (form == null)
+			b.method(method, HttpRequest.BodyPublishers.noBody());
+		else
+			b.header("Content-Type", "application/x-www-form-urlencoded")
+				.method(method, HttpRequest.BodyPublishers.ofString(form));
+		return client.send(b.build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	private void assertResponse(int status, String body, HttpResponse<String> r) {
+		assertEquals(status, r.statusCode());
+		assertEquals(body, r.body());
+	}
+
+	@Test
+	public void testBookingAndReception() throws Exception {
+		assertResponse(200, "[\"Cardiology\",\"Ophthalmology\"]", send("GET", "/specialities", null));
+		assertResponse(200, "{\"XD345\":[\"10:00-10:20\",\"10:20-10:40\",\"10:40-11:00\"]}",
+				send("GET", "/slots?date=2023-06-28&speciality=Cardiology", null));
+
+		String booking = "ssn=GVNBNC80B14F219K&name=Giovanni&surname=Bianchi&doctor=XD345&date=2023-06-28&slot=10%3A20-10%3A40";
+		assertResponse(201, "{\"id\":\"1\"}", send("POST", "/appointments", booking));
+		assertEquals(409, send("POST", "/appointments", booking).statusCode());
+		assertResponse(200, "{\"id\":\"1\",\"doctor\":\"XD345\",\"patient\":\"GVNBNC80B14F219K\",\"date\":\"2023-06-28\",\"slot\":\"10:20\"}",
+				send("GET", "/appointments?id=1", null));
+		assertEquals(404, send("GET", "/appointments?id=7", null).statusCode());
+
+		assertResponse(200, "{\"appointments\":1}", send("POST", "/reception/date", "date=2023-06-28"));
+		assertResponse(200, "{\"id\":null}", send("GET", "/reception/next?doctor=XD345", null));
+		assertResponse(200, "{}", send("POST", "/reception/accept?ssn=GVNBNC80B14F219K", null));
+		assertResponse(200, "{\"id\":\"1\"}", send("GET", "/reception/next?doctor=XD345", null));
+		assertResponse(200, "{\"rate\":1.0}", send("GET", "/stats/show-rate?doctor=XD345&date=2023-06-28", null));
+		assertResponse(200, "{}", send("POST", "/reception/complete", "doctor=XD345&id=1"));
+		assertEquals(409, send("POST", "/reception/complete", "doctor=XD345&id=1").statusCode());
+		assertResponse(200, "{\"XD345\":1}", send("GET", "/stats/busiest?from=2023-06-01&to=2023-06-30&k=3", null));
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		assertResponse(400, "{\"error\":\"missing parameter speciality\"}", send("GET", "/slots?date=2023-06-28", null));
+		assertEquals(400, send("GET", "/stats/busiest?from=2023-06-01&to=2023-06-30&k=x", null).statusCode());
+		assertResponse(400, "{\"error\":\"parameter k is negative\"}", send("GET", "/stats/busiest?from=2023-06-01&to=2023-06-30&k=-1", null));
+		assertResponse(400, "{\"error\":\"parameter date is not a date\"}", send("GET", "/slots?date=28/06/2023&speciality=Cardiology", null));
+		// a rejected date does not reach the manager
+		assertEquals(400, send("POST", "/reception/date", "date=tomorrow").statusCode());
+		assertResponse(200, "{\"appointments\":0}", send("POST", "/reception/date", "date=2023-06-28"));
+		assertEquals(404, send("GET", "/doctors", null).statusCode());
+		assertEquals(405, send("DELETE", "/appointments?id=1", null).statusCode());
+		// names are escaped
+		mgr.addSpecialities("Ear \"ENT\"");
+		assertResponse(200, "[\"Cardiology\",\"Ear \\\"ENT\\\"\",\"Ophthalmology\"]", send("GET", "/specialities", null));
+	}
+}
@@ -0,0 +1,93 @@
+package example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.med.AppointmentStorage;
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+
+public class TestStorage {
+
+	private static final int DOCTORS = 10;
+	private static final int DAYS = 100;
+	private static final LocalDate FIRST = LocalDate.of(2023, 1, 2);
+
+	private Path dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("med-storage");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (var files = Files.list(dir)) {
+			for (Path f : (Iterable<Path>) files::iterator)
+				Files.delete(f);
+		}
+		Files.delete(dir);
+	}
+
+	@Test
+	public void testBackingsAgree() throws MedException, IOException {
+		List<String> heap = history(AppointmentStorage.heap());
+		assertEquals(heap, history(AppointmentStorage.offHeap()));
+		assertEquals(heap, history(AppointmentStorage.mapped(dir.resolve("appointments.bin"))));
+	}
+
+	// builds the same history on the given storage and describes what the manager reports
+	private List<String> history(AppointmentStorage storage) throws MedException {
+		MedManager mgr = new MedManager(Clock.systemDefaultZone(), storage);
+		mgr.addSpecialities("Cardiology");
+		for (int d=0; d<DOCTORS; d++) {
+			mgr.addDoctor("D"+d, "N", "S", "Cardiology");
+			for (int day=0; day<DAYS; day++)
+				mgr.addDailySchedule("D"+d, FIRST.plusDays(day).toString(), "08:00", "20:00", 10);
+		}
+		List<String> ids = new ArrayList<>();
+		for (int day=0; day<DAYS; day++)
+			for (int d=0; d<DOCTORS; d++)
+				for (int m=8*60; m<20*60; m+=10)
+					ids.add(mgr.setAppointment("SSN"+(ids.size()%5000), "Name", "Surname", "D"+d,
+							FIRST.plusDays(day).toString(), slot(m)));
+		// more appointments than an off-heap chunk holds
+		assertTrue(ids.size() > 1 << 16);
+
+		String last = FIRST.plusDays(DAYS-1).toString();
+		mgr.cancelAppointment(ids.get(7));
+		mgr.rescheduleAppointment(ids.get(70000), "D0", FIRST.toString(), "09:10-09:20");
+		mgr.setCurrentDate(last);
+		// first appointment of D3 on the last day
+		mgr.accept("SSN"+((DAYS-1)*DOCTORS*72 + 3*72)%5000);
+		mgr.completeAppointment("D3", mgr.nextAppointment("D3"));
+		assertThrows(MedException.class, ()-> mgr.cancelAppointment(ids.get(7)));
+
+		List<String> res = new ArrayList<>();
+		for (int i=0; i<ids.size(); i+=997)
+			res.add(mgr.getAppointmentDoctor(ids.get(i)) + " " + mgr.getAppointmentPatient(ids.get(i)) + " "
+					+ mgr.getAppointmentDate(ids.get(i)) + " " + mgr.getAppointmentTime(ids.get(i)));
+		res.add(mgr.appointmentsBetween(FIRST.toString(), last).collect(Collectors.joining(",")));
+		res.add(String.join(",", mgr.listAppointments("D3", last)));
+		res.add(String.valueOf(mgr.showRate("D3", last)));
+		return res;
+	}
+
+	private static String slot(int m) {
+		return String.format("%02d:%02d-%02d:%02d", m/60, m%60, (m+10)/60, (m+10)%60);
+	}
+}
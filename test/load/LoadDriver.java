@@ -0,0 +1,183 @@
+package load;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+
+/**
+ * Multi-threaded driver for a {@link Workload}.
+ * 
+ * Threads take the operations from a shared cursor, so the global order of
+ * the workload is roughly preserved, and record the latency of each call.
+ * At the end a report with throughput and latency percentiles for each
+ * kind of operation is produced.
+ * 
+ * Usage: {@code LoadDriver [specialities] [doctors] [days] [threads] [seed]}
+ */
+public class LoadDriver {
+
+	/**
+	 * Latency samples of a kind of operation.
+	 */
+	public static class Stats {
+		private long[] samples = new long[1024];
+		private int count;
+		private int errors;
+
+		void add(long nanos, boolean ok) {
+			if (count == samples.length)
+				samples = Arrays.copyOf(samples, count*2);
+			samples[count++] = nanos;
+			if (!ok)
+				errors++;
+		}
+
+		void merge(Stats o) {
+			for (int i=0; i<o.count; i++)
+				add(o.samples[i], true);
+			errors += o.errors;
+		}
+
+		public int count() {
+			return count;
+		}
+
+		public int errors() {
+			return errors;
+		}
+
+		// percentile in nanoseconds, samples must be sorted
+		public long percentile(double p) {
+			if (count == 0)
+				return 0;
+			int i = (int) Math.ceil(p/100.0*count) - 1;
+			return samples[Math.max(0, Math.min(count-1, i))];
+		}
+
+		void sort() {
+			Arrays.sort(samples, 0, count);
+		}
+	}
+
+	/**
+	 * Result of a run.
+	 */
+	public static class Report {
+		public final Map<Workload.Kind,Stats> stats;
+		public final long elapsedNanos;
+		public final int threads;
+
+		Report(Map<Workload.Kind,Stats> stats, long elapsedNanos, int threads) {
+			this.stats = stats;
+			this.elapsedNanos = elapsedNanos;
+			this.threads = threads;
+		}
+
+		public int totalOps() {
+			return stats.values().stream().mapToInt(Stats::count).sum();
+		}
+
+		public double throughput() {
+			return totalOps() / (elapsedNanos / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%d ops, %d threads, %.1f ms, %.0f ops/s%n",
+					totalOps(), threads, elapsedNanos/1e6, throughput()));
+			sb.append(String.format("%-9s %9s %7s %10s %9s %9s %9s %9s%n",
+					"op", "count", "errors", "ops/s", "p50 us", "p90 us", "p99 us", "max us"));
+			for (Map.Entry<Workload.Kind,Stats> e : stats.entrySet()) {
+				Stats s = e.getValue();
+				sb.append(String.format("%-9s %9d %7d %10.0f %9.1f %9.1f %9.1f %9.1f%n",
+						e.getKey(), s.count(), s.errors(), s.count() / (elapsedNanos / 1e9),
+						s.percentile(50)/1e3, s.percentile(90)/1e3, s.percentile(99)/1e3,
+						s.percentile(100)/1e3));
+			}
+			return sb.toString();
+		}
+	}
+
+	// runs an operation, false if it was rejected
+	private final Predicate<Workload.Op> target;
+	private final int threads;
+
+	public LoadDriver(MedManager mgr, int threads) {
+		this(op -> op.apply(mgr), threads);
+	}
+
+	/**
+	 * driver for operations run by other means than a local manager,
+	 * e.g. over the HTTP API
+	 * 
+	 * @param target	runs an operation, returns false if it was rejected
+	 * @param threads	number of client threads
+	 */
+	public LoadDriver(Predicate<Workload.Op> target, int threads) {
+		this.target = target;
+		this.threads = threads;
+	}
+
+	/**
+	 * runs the operations and waits for their completion
+	 * 
+	 * @param ops operations to run
+	 * @return throughput and latencies of the run
+	 */
+	public Report run(List<Workload.Op> ops) throws InterruptedException {
+		AtomicInteger cursor = new AtomicInteger();
+		List<Map<Workload.Kind,Stats>> perThread = new ArrayList<>(threads);
+		Thread[] workers = new Thread[threads];
+		for (int t=0; t<threads; t++) {
+			Map<Workload.Kind,Stats> local = new EnumMap<>(Workload.Kind.class);
+			perThread.add(local);
+			workers[t] = new Thread(() -> {
+				int i;
+				while ((i = cursor.getAndIncrement()) < ops.size()) {
+					Workload.Op op = ops.get(i);
+					long start = System.nanoTime();
+					boolean ok = target.test(op);
+					long elapsed = System.nanoTime() - start;
+					local.computeIfAbsent(op.kind, k -> new Stats()).add(elapsed, ok);
+				}
+			}, "load-" + t);
+		}
+		long start = System.nanoTime();
+		for (Thread w : workers)
+			w.start();
+		for (Thread w : workers)
+			w.join();
+		long elapsed = System.nanoTime() - start;
+
+		Map<Workload.Kind,Stats> merged = new EnumMap<>(Workload.Kind.class);
+		for (Map<Workload.Kind,Stats> local : perThread)
+			local.forEach((k, s) -> merged.computeIfAbsent(k, x -> new Stats()).merge(s));
+		merged.values().forEach(Stats::sort);
+		return new Report(merged, elapsed, threads);
+	}
+
+	public static void main(String[] args) throws MedException, InterruptedException {
+		int specialities = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int doctors = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int days = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+
+		Workload w = new Workload(specialities, doctors, days, seed);
+		MedManager mgr = new MedManager();
+		long t0 = System.nanoTime();
+		w.populate(mgr);
+		List<Workload.Op> ops = w.operations();
+		System.out.printf("setup: %d doctors x %d days, %d ops generated in %.1f ms%n",
+				doctors, days, ops.size(), (System.nanoTime()-t0)/1e6);
+		System.out.print(new LoadDriver(mgr, threads).run(ops));
+	}
+}
@@ -0,0 +1,161 @@
+package load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+import it.polito.med.MedServer;
+
+/**
+ * The workload of {@link TestLoadDriver} run against the HTTP API over loopback.
+ */
+public class TestHttpLoad {
+
+	private static final Pattern SLOTS = Pattern.compile("\\{(\"[^\"]+\":\\[(\"\\d\\d:\\d\\d-\\d\\d:\\d\\d\",?)*\\],?)*\\}");
+	private static final Pattern DOCTOR = Pattern.compile("\"([^\"]+)\":\\[");
+	private static final Pattern ID = Pattern.compile("\\{\"id\":\"(\\d+)\"\\}");
+
+	private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	private String base;
+	private MedManager mgr;
+	// responses not matching the operation
+	private final Queue<String> problems = new ConcurrentLinkedQueue<>();
+	// bookings made through the API (key=appointment id)
+	private final Map<String,Workload.Op> booked = new ConcurrentHashMap<>();
+
+	private static String form(String... kv) {
+		StringBuilder sb = new StringBuilder(64);
+		for (int i=0; i<kv.length; i+=2) {
+			if (i > 0)
+				sb.append('&');
+			sb.append(kv[i]).append('=').append(URLEncoder.encode(kv[i+1], StandardCharsets.UTF_8));
+		}
+		return sb.toString();
+	}
+
+	private HttpResponse<String> get(String path, String... kv) throws IOException, InterruptedException {
+		HttpRequest r = HttpRequest.newBuilder(URI.create(base + path + "?" + form(kv))).GET().build();
+		return client.send(r, HttpResponse.BodyHandlers.ofString());
+	}
+
+	private HttpResponse<String> post(String path, String... kv) throws IOException, InterruptedException {
+		HttpRequest r = HttpRequest.newBuilder(URI.create(base + path))
+				.header("Content-Type", "application/x-www-form-urlencoded")
+				.POST(HttpRequest.BodyPublishers.ofString(form(kv))).build();
+		return client.send(r, HttpResponse.BodyHandlers.ofString());
+	}
+
+	// checks a response, false if the status is not the expected one
+	private boolean expect(Workload.Op op, HttpResponse<String> r, int status, String body) {
+		if (r.statusCode() != status)
+			return false;
+		if (!r.body().matches(body))
+			problems.add(op.kind + " " + r.uri() + ": " + r.body());
+		return true;
+	}
+
+	// same semantics as Workload.Op.apply
+	private boolean apply(Workload.Op op) {
+		String[] a = op.args;
+		try {
+			HttpResponse<String> r;
+			switch (op.kind) {
+			case FIND:
+				r = get("/slots", "date", a[0], "speciality", a[1]);
+				if (!expect(op, r, 200, SLOTS.pattern()))
+					return false;
+				// only the doctors of the speciality
+				Collection<String> specialists = mgr.getSpecialists(a[1]);
+				Matcher m = DOCTOR.matcher(r.body());
+				while (m.find())
+					if (!specialists.contains(m.group(1)))
+						problems.add("FIND " + a[1] + ": " + m.group(1));
+				return true;
+			case BOOK:
+				r = post("/appointments", "ssn", a[0], "name", a[1], "surname", a[2],
+						"doctor", a[3], "date", a[4], "slot", a[5]);
+				if (!expect(op, r, 201, ID.pattern()))
+					return false;
+				Matcher id = ID.matcher(r.body());
+				if (id.matches())
+					booked.put(id.group(1), op);
+				return true;
+			case ACCEPT:
+				return expect(op, post("/reception/accept", "ssn", a[0]), 200, "\\{\\}");
+			case NEXT:
+				return expect(op, get("/reception/next", "doctor", a[0]), 200, "\\{\"id\":(null|\"\\d+\")\\}");
+			case COMPLETE:
+				String body = get("/reception/next", "doctor", a[0]).body();
+				if (!body.startsWith("{\"id\":\""))
+					return false;
+				String next = body.substring(7, body.indexOf('"', 7));
+				return expect(op, post("/reception/complete", "doctor", a[0], "id", next), 200, "\\{\\}");
+			case SET_DATE:
+				return expect(op, post("/reception/date", "date", a[0]), 200, "\\{\"appointments\":\\d+\\}");
+			default:
+				return false;
+			}
+		} catch (IOException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	@Test
+	public void testLoopbackWorkload() throws MedException, IOException, InterruptedException {
+		Workload w = new Workload(3, 12, 5, 7);
+		mgr = new MedManager();
+		w.populate(mgr);
+		List<Workload.Op> ops = w.operations();
+
+		try (MedServer server = new MedServer(mgr, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+			base = "http://127.0.0.1:" + server.getPort();
+			LoadDriver.Report report = new LoadDriver(this::apply, 8).run(ops);
+			System.out.print("HTTP loopback\n" + report);
+
+			assertEquals(ops.size(), report.totalOps());
+			assertEquals(0, report.stats.get(Workload.Kind.BOOK).errors());
+			assertEquals(0, report.stats.get(Workload.Kind.FIND).errors());
+			assertTrue(report.throughput() > 0);
+			assertTrue(report.stats.get(Workload.Kind.FIND).percentile(99) > 0);
+		}
+		assertEquals(List.of(), new ArrayList<>(problems));
+		// every id answered is the appointment that was requested
+		assertEquals(count(ops, Workload.Kind.BOOK), booked.size());
+		booked.forEach((id, op)->{
+			String[] a = op.args;
+			assertEquals(a[0], mgr.getAppointmentPatient(id));
+			assertEquals(a[3], mgr.getAppointmentDoctor(id));
+			assertEquals(a[4], mgr.getAppointmentDate(id));
+			assertTrue(a[5].startsWith(mgr.getAppointmentTime(id)));
+		});
+	}
+
+	private static long count(List<Workload.Op> ops, Workload.Kind kind) {
+		return ops.stream().filter(op->op.kind == kind).count();
+	}
+}
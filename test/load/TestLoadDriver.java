@@ -0,0 +1,31 @@
+package load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+
+public class TestLoadDriver {
+
+	@Test
+	public void testSmallWorkload() throws MedException, InterruptedException {
+		Workload w = new Workload(3, 12, 5, 7);
+		MedManager mgr = new MedManager();
+		w.populate(mgr);
+		assertEquals(4, mgr.getSpecialists(w.speciality(0)).size());
+
+		List<Workload.Op> ops = w.operations();
+		// same seed, same operations
+		assertEquals(ops.size(), new Workload(3, 12, 5, 7).operations().size());
+
+		LoadDriver.Report report = new LoadDriver(mgr, 4).run(ops);
+		assertEquals(ops.size(), report.totalOps());
+		assertEquals(0, report.stats.get(Workload.Kind.BOOK).errors());
+		assertTrue(report.throughput() > 0);
+	}
+}
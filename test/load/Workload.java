@@ -0,0 +1,244 @@
+package load;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+
+/**
+ * Synthetic workload for the med centre.
+ * 
+ * It defines N specialities, M doctors and D days of schedules and
+ * produces a list of operations following the daily flow of the centre:
+ * patients look for slots and book them ahead, then on each day the
+ * reception accepts the patients who show up and the doctors call and
+ * complete their appointments.
+ * Booked slot times follow a bimodal arrival curve with a morning and
+ * an afternoon peak.
+ */
+public class Workload {
+
+	public enum Kind { FIND, BOOK, ACCEPT, NEXT, COMPLETE, SET_DATE }
+
+	/**
+	 * A single operation of the workload.
+	 */
+	public static class Op {
+		public final Kind kind;
+		final String[] args;
+
+		Op(Kind kind, String... args) {
+			this.kind = kind;
+			this.args = args;
+		}
+
+		/**
+		 * applies the operation to the manager
+		 * 
+		 * @return false if the manager rejected the operation
+		 */
+		public boolean apply(MedManager mgr) {
+			try {
+				switch (kind) {
+				case FIND:
+					mgr.findSlots(args[0], args[1]);
+					return true;
+				case BOOK:
+					return mgr.setAppointment(args[0], args[1], args[2], args[3], args[4], args[5]) != null;
+				case ACCEPT:
+					mgr.accept(args[0]);
+					return true;
+				case NEXT:
+					mgr.nextAppointment(args[0]);
+					return true;
+				case COMPLETE:
+					String next = mgr.nextAppointment(args[0]);
+					if (next == null)
+						return false;
+					mgr.completeAppointment(args[0], next);
+					return true;
+				case SET_DATE:
+					mgr.setCurrentDate(args[0]);
+					return true;
+				default:
+					return false;
+				}
+			} catch (MedException e) {
+				return false;
+			}
+		}
+	}
+
+	// schedule of every doctor on every day
+	static final String DAY_START = "08:00";
+	static final String DAY_END = "18:00";
+	static final int SLOT_MINUTES = 20;
+	private static final int FIRST_MINUTE = 8*60;
+	private static final int SLOTS_PER_DAY = (18*60 - FIRST_MINUTE) / SLOT_MINUTES;
+
+	private final int specialities;
+	private final int doctors;
+	private final int days;
+	private final LocalDate firstDay;
+	private final Random random;
+
+	// share of the slots that gets booked
+	private double fillRate = 0.8;
+	// availability searches for each booking
+	private int findsPerBooking = 5;
+	// probability that a booked patient shows up
+	private double showProbability = 0.85;
+	// days in advance a booking is made
+	private int maxLeadDays = 14;
+	private int patients = 10_000;
+
+	public Workload(int specialities, int doctors, int days, long seed) {
+		this.specialities = specialities;
+		this.doctors = doctors;
+		this.days = days;
+		this.firstDay = LocalDate.of(2024, 1, 8);
+		this.random = new Random(seed);
+	}
+
+	public Workload fillRate(double fillRate) {
+		this.fillRate = fillRate;
+		return this;
+	}
+
+	public Workload findsPerBooking(int findsPerBooking) {
+		this.findsPerBooking = findsPerBooking;
+		return this;
+	}
+
+	public Workload showProbability(double showProbability) {
+		this.showProbability = showProbability;
+		return this;
+	}
+
+	public Workload patients(int patients) {
+		this.patients = patients;
+		return this;
+	}
+
+	public String speciality(int i) {
+		return "Spec" + i;
+	}
+
+	public String doctor(int i) {
+		return String.format("D%05d", i);
+	}
+
+	public String day(int i) {
+		return firstDay.plusDays(i).toString();
+	}
+
+	/**
+	 * defines specialities, doctors and daily schedules on the manager
+	 */
+	public void populate(MedManager mgr) throws MedException {
+		String[] specs = new String[specialities];
+		for (int s=0; s<specialities; s++)
+			specs[s] = speciality(s);
+		mgr.addSpecialities(specs);
+		for (int d=0; d<doctors; d++)
+			mgr.addDoctor(doctor(d), "Name"+d, "Surname"+d, speciality(d % specialities));
+		for (int d=0; d<doctors; d++)
+			for (int day=0; day<days; day++)
+				mgr.addDailySchedule(doctor(d), day(day), DAY_START, DAY_END, SLOT_MINUTES);
+	}
+
+	/**
+	 * generates the operations, in the order a single centre would see them.
+	 * Bookings for a day are spread over the days before it, then the day
+	 * is opened and the reception serves the patients who show up.
+	 */
+	public List<Op> operations() {
+		// bookings issued on each day
+		List<List<Op>> issued = new ArrayList<>();
+		// patients booked for each day
+		List<List<String[]>> booked = new ArrayList<>();
+		for (int day=0; day<days; day++) {
+			issued.add(new ArrayList<>());
+			booked.add(new ArrayList<>());
+		}
+		double[] weights = arrivalCurve();
+		for (int day=0; day<days; day++) {
+			for (int d=0; d<doctors; d++) {
+				Set<Integer> taken = new HashSet<>();
+				int n = (int) Math.min(SLOTS_PER_DAY, Math.round(SLOTS_PER_DAY * fillRate));
+				for (int b=0; b<n; b++) {
+					int slot = freeSlot(weights, taken);
+					String ssn = String.format("SSN%07d", random.nextInt(patients));
+					String slotString = slotString(slot);
+					int issuedOn = Math.max(0, day - random.nextInt(maxLeadDays+1));
+					List<Op> ops = issued.get(issuedOn);
+					for (int f=0; f<findsPerBooking; f++)
+						ops.add(new Op(Kind.FIND, day(day), speciality(random.nextInt(specialities))));
+					ops.add(new Op(Kind.BOOK, ssn, "Name", "Surname", doctor(d), day(day), slotString));
+					booked.get(day).add(new String[] {ssn, doctor(d)});
+				}
+			}
+		}
+		List<Op> res = new ArrayList<>();
+		for (int day=0; day<days; day++) {
+			List<Op> ops = issued.get(day);
+			Collections.shuffle(ops, random);
+			res.addAll(ops);
+			// reception of the day
+			res.add(new Op(Kind.SET_DATE, day(day)));
+			List<String[]> patientsOfDay = booked.get(day);
+			Collections.shuffle(patientsOfDay, random);
+			for (String[] p : patientsOfDay) {
+				if (random.nextDouble() >= showProbability)
+					continue;
+				res.add(new Op(Kind.ACCEPT, p[0]));
+				res.add(new Op(Kind.NEXT, p[1]));
+				res.add(new Op(Kind.COMPLETE, p[1]));
+			}
+		}
+		return res;
+	}
+
+	// relative booking demand for each slot of the day:
+	// a morning peak around 9:30 and a lower afternoon one around 14:30
+	private double[] arrivalCurve() {
+		double[] w = new double[SLOTS_PER_DAY];
+		for (int i=0; i<SLOTS_PER_DAY; i++) {
+			double t = FIRST_MINUTE + i*SLOT_MINUTES + SLOT_MINUTES/2.0;
+			w[i] = 0.1 + gaussian(t, 9*60+30, 60) + 0.7*gaussian(t, 14*60+30, 75);
+		}
+		return w;
+	}
+
+	private static double gaussian(double x, double mean, double sd) {
+		double z = (x-mean)/sd;
+		return Math.exp(-z*z/2);
+	}
+
+	// samples a slot from the curve, moving to the next free one if taken
+	private int freeSlot(double[] weights, Set<Integer> taken) {
+		double tot = 0;
+		for (double w : weights)
+			tot += w;
+		double r = random.nextDouble()*tot;
+		int slot = 0;
+		while (slot < weights.length-1 && (r -= weights[slot]) > 0)
+			slot++;
+		while (taken.contains(slot))
+			slot = (slot+1) % weights.length;
+		taken.add(slot);
+		return slot;
+	}
+
+	private static String slotString(int slot) {
+		int start = FIRST_MINUTE + slot*SLOT_MINUTES;
+		int end = start + SLOT_MINUTES;
+		return String.format("%02d:%02d-%02d:%02d", start/60, start%60, end/60, end%60);
+	}
+}
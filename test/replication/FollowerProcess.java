@@ -0,0 +1,58 @@
+package replication;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import it.polito.med.MedManager;
+import it.polito.med.ReplicationFollower;
+
+/**
+ * Follower run in its own JVM by {@link TestReplication}.
+ * Arguments: host and port of the primary. It answers one line
+ * for each command read from the standard input:
+ * <pre>
+ * await seq               applied | timeout
+ * slots date speciality   slots of the speciality on the date
+ * list code date          appointments of the doctor on the date
+ * between from to         ids of the appointments between the dates
+ * quit
+ * </pre>
+ */
+public class FollowerProcess {
+
+	public static void main(String[] args) throws Exception {
+		try (ReplicationFollower follower = new ReplicationFollower(
+				new InetSocketAddress(args[0], Integer.parseInt(args[1])), 1000);
+				BufferedReader in = new BufferedReader(new InputStreamReader(System.in))) {
+			System.out.println("ready");
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] cmd = line.split(" ");
+				MedManager mgr = follower.manager();
+				switch (cmd[0]) {
+				case "await":
+					System.out.println(follower.await(Long.parseLong(cmd[1]), 10_000) ? "applied" : "timeout");
+					break;
+				case "slots":
+					System.out.println(new TreeMap<>(mgr.findSlots(cmd[1], cmd[2])));
+					break;
+				case "list":
+					System.out.println(mgr.listAppointments(cmd[1], cmd[2]));
+					break;
+				case "between":
+					synchronized (mgr) {
+						System.out.println(mgr.appointmentsBetween(cmd[1], cmd[2]).collect(Collectors.joining(",")));
+					}
+					break;
+				case "quit":
+					return;
+				default:
+					System.out.println("unknown command " + cmd[0]);
+				}
+			}
+		}
+	}
+}
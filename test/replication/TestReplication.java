@@ -0,0 +1,264 @@
+package replication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+import it.polito.med.ReplicationFollower;
+import it.polito.med.ReplicationPrimary;
+
+public class TestReplication {
+
+	private static final List<String> DATES = List.of("2023-06-26", "2023-06-27", "2023-06-28", "2023-07-03");
+
+	// clock moved by hand
+	private static class ManualClock extends Clock {
+		private Instant now;
+
+		ManualClock(LocalDateTime t) {
+			set(t);
+		}
+
+		void set(LocalDateTime t) {
+			now = t.toInstant(ZoneOffset.UTC);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Instant instant() {
+			return now;
+		}
+	}
+
+	// primary listening on the loopback interface
+	private static ReplicationPrimary primary(MedManager mgr) throws IOException {
+		return new ReplicationPrimary(mgr, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+	}
+
+	private static void load(MedManager mgr) throws MedException {
+		mgr.addSpecialities("Cardiology", "Orthopedy");
+		mgr.addDoctor("XD345", "John", "Smith", "Cardiology");
+		mgr.addDoctor("AH876", "Jane", "Black", "Cardiology");
+		mgr.addDoctor("OK358", "Jack", "Bones", "Orthopedy");
+		for (String date : DATES.subList(0, 3)) {
+			mgr.addDailySchedule("XD345", date, "10:00", "12:00", 20);
+			mgr.addDailySchedule("OK358", date, "09:00", "11:00", 30);
+		}
+		mgr.addWeeklySchedule("AH876", DayOfWeek.MONDAY, "14:00", "16:00", 30, "2023-06-01", "2023-07-31");
+		mgr.addScheduleException("AH876", "2023-07-10");
+	}
+
+	private static void book(MedManager mgr) throws MedException {
+		String a1 = mgr.setAppointment("GVNBNC80B14F219K", "Giovanni", "Bianchi", "XD345", "2023-06-28", "10:40-11:00");
+		String a2 = mgr.setAppointment("LRARSS87G64A341J", "Laura", "Rossi", "XD345", "2023-06-28", "10:00-10:20");
+		mgr.bookEarliest("BNCLRA90A41F205X", "Lara", "Bianco", "Cardiology", "2023-06-27");
+		mgr.bookEarliest("MRARSS70A01H501Z", "Mario", "Rossi", "Orthopedy", "2023-06-26");
+		mgr.rescheduleAppointment(a2, "AH876", "2023-07-03", "14:30-15:00");
+		mgr.cancelAppointment(a1);
+		mgr.joinWaitlist("GVNBNC80B14F219K", "Giovanni", "Bianchi", "Cardiology", "2023-06-28", "2023-06-28", 0);
+	}
+
+	// what a replica must answer like the primary
+	private static List<String> queries(MedManager mgr) throws MedException {
+		List<String> res = new ArrayList<>();
+		synchronized (mgr) {
+			for (String date : DATES) {
+				res.add(new TreeMap<>(mgr.findSlots(date, "Cardiology")).toString());
+				res.add(mgr.listAppointments("XD345", date).toString());
+			}
+			res.add(mgr.appointmentsBetween("2023-06-01", "2023-07-31").collect(Collectors.joining(",")));
+		}
+		return res;
+	}
+
+	@Test
+	public void testFollowerInProcess() throws Exception {
+		ManualClock clock = new ManualClock(LocalDateTime.of(2023, 6, 1, 8, 0));
+		MedManager mgr = new MedManager(clock);
+		// closed in the middle of the test
+		ReplicationPrimary primary = primary(mgr);
+		try (ReplicationFollower follower = new ReplicationFollower(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), primary.getPort()), 500)) {
+			load(mgr);
+			book(mgr);
+			mgr.setCurrentDate("2023-06-28");
+			mgr.accept("LRARSS87G64A341J");
+			clock.set(LocalDateTime.of(2023, 6, 28, 13, 0));
+			assertTrue(mgr.detectNoShows() > 0);
+			// polls that mark nothing are not journaled
+			long head = primary.head();
+			assertEquals(0, mgr.detectNoShows());
+			assertEquals(head, primary.head());
+
+			assertTrue(follower.await(primary.head(), 5000));
+			MedManager replica = follower.manager();
+			assertEquals(queries(mgr), queries(replica));
+			assertEquals(mgr.noShowCount(), replica.noShowCount());
+			assertEquals(mgr.waitlistSize("Cardiology"), replica.waitlistSize("Cardiology"));
+			// the next heartbeat tells the follower it is up to date
+			for (int i=0; i<100 && follower.staleness() > 500; i++)
+				Thread.sleep(10);
+			assertEquals(mgr.showRate("XD345", "2023-06-28"), follower.read(m->m.showRate("XD345", "2023-06-28")), 0.0);
+
+			// only the primary accepts mutations
+			assertThrows(IllegalStateException.class,
+					()-> replica.setAppointment("GVNBNC80B14F219K", "Giovanni", "Bianchi", "XD345", "2023-06-26", "10:00-10:20"));
+
+			// without the primary the replica becomes too stale to be read
+			primary.close();
+			Thread.sleep(800);
+			assertTrue(follower.staleness() > 500);
+			assertThrows(MedException.class, ()-> follower.read(m->m.findSlots("2023-06-26", "Cardiology")));
+			assertNull(follower.failure());
+		} finally {
+			primary.close();
+		}
+	}
+
+	@Test
+	public void testCheckpointedJournal() throws Exception {
+		MedManager mgr = new MedManager();
+		// a few mutations in memory, the older ones in the checkpoint
+		try (ReplicationPrimary primary = new ReplicationPrimary(mgr,
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4)) {
+			load(mgr);
+			book(mgr);
+			assertTrue(primary.head() > 8);
+			// a follower joining late replays the whole journal
+			try (ReplicationFollower follower = new ReplicationFollower(
+					new InetSocketAddress(InetAddress.getLoopbackAddress(), primary.getPort()), 500)) {
+				assertTrue(follower.await(primary.head(), 5000));
+				assertEquals(queries(mgr), queries(follower.manager()));
+				mgr.cancelAppointment("2");
+				assertTrue(follower.await(primary.head(), 5000));
+				assertEquals(queries(mgr), queries(follower.manager()));
+			}
+			assertNull(primary.failure());
+		}
+	}
+
+	@Test
+	public void testFailedFollower() throws Exception {
+		try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+				ReplicationFollower follower = new ReplicationFollower(
+						new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()), 500)) {
+			try (Socket s = server.accept()) {
+				DataOutputStream out = new DataOutputStream(s.getOutputStream());
+				out.writeLong(0);
+				new DataInputStream(s.getInputStream()).readLong();
+				// an entry with an unknown operation
+				out.writeByte(1);
+				out.writeLong(1);
+				out.writeByte(99);
+				out.flush();
+				for (int i=0; i<500 && follower.failure() == null; i++)
+					Thread.sleep(10);
+			}
+			assertNotNull(follower.failure());
+			assertEquals(Long.MAX_VALUE, follower.staleness());
+			assertThrows(MedException.class, ()-> follower.read(m->m.getSpecialities()));
+		}
+	}
+
+	@Test
+	public void testFollowerProcesses() throws Exception {
+		MedManager mgr = new MedManager();
+		try (ReplicationPrimary primary = primary(mgr)) {
+			List<Follower> followers = new ArrayList<>();
+			for (int i=0; i<2; i++)
+				followers.add(new Follower(primary.getPort()));
+			try {
+				load(mgr);
+				for (Follower f : followers)
+					f.check(primary.head(), queries(mgr));
+				// the stream goes on after the followers have caught up
+				book(mgr);
+				for (Follower f : followers)
+					f.check(primary.head(), queries(mgr));
+			} finally {
+				for (Follower f : followers)
+					f.quit();
+			}
+		}
+	}
+
+	// follower running in another JVM
+	private static class Follower {
+		private final Process process;
+		private final PrintWriter out;
+		private final BufferedReader in;
+
+		Follower(int port) throws IOException {
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			// surefire runs the tests from a manifest-only jar
+			String cp = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+			process = new ProcessBuilder(java, "-cp", cp, FollowerProcess.class.getName(),
+					InetAddress.getLoopbackAddress().getHostAddress(), Integer.toString(port))
+					.redirectError(ProcessBuilder.Redirect.INHERIT)
+					.start();
+			out = new PrintWriter(process.getOutputStream(), true);
+			in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			assertEquals("ready", in.readLine());
+		}
+
+		String ask(String cmd) throws IOException {
+			out.println(cmd);
+			return in.readLine();
+		}
+
+		void check(long head, List<String> expected) throws IOException {
+			assertEquals("applied", ask("await " + head));
+			List<String> res = new ArrayList<>();
+			for (String date : DATES) {
+				res.add(ask("slots " + date + " Cardiology"));
+				res.add(ask("list XD345 " + date));
+			}
+			res.add(ask("between 2023-06-01 2023-07-31"));
+			assertEquals(expected, res);
+		}
+
+		void quit() throws InterruptedException {
+			out.println("quit");
+			if (!process.waitFor(10, TimeUnit.SECONDS))
+				process.destroyForcibly();
+		}
+	}
+}
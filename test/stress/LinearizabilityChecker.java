@@ -0,0 +1,100 @@
+package stress;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks that a concurrent history is linearizable with respect to a
+ * sequential model (Wing and Gong search with memoization of the explored
+ * (linearized operations, model state) pairs).
+ * 
+ * An operation can be linearized next if no other pending operation
+ * completed before it was invoked, and the model produces the same result.
+ */
+public class LinearizabilityChecker<S> {
+
+	/**
+	 * Sequential specification of the object.
+	 */
+	public interface Model<S> {
+		/**
+		 * applies the operation to the state
+		 * 
+		 * @return the new state, null if the recorded result is not the one of the model
+		 */
+		S apply(S state, Operation op);
+	}
+
+	/**
+	 * An operation of the history, with its call and return times.
+	 */
+	public static class Operation {
+		public final String name;
+		public final String arg;
+		public final String result;
+		final long invoke;
+		final long response;
+
+		public Operation(String name, String arg, String result, long invoke, long response) {
+			this.name = name;
+			this.arg = arg;
+			this.result = result;
+			this.invoke = invoke;
+			this.response = response;
+		}
+
+		@Override
+		public String toString() {
+			return name + "(" + arg + ")=" + result;
+		}
+	}
+
+	private final Model<S> model;
+	private List<Operation> history;
+	private Set<String> explored;
+
+	public LinearizabilityChecker(Model<S> model) {
+		this.model = model;
+	}
+
+	/**
+	 * @param history	operations of all the threads (at most 63)
+	 * @param initial	initial state of the model, with a toString identifying it
+	 * @return a valid linearization, null if none exists
+	 */
+	public List<Operation> check(List<Operation> history, S initial) {
+		if (history.size() > 63)
+			throw new IllegalArgumentException("history too long");
+		this.history = history;
+		this.explored = new HashSet<>();
+		List<Operation> order = new ArrayList<>();
+		return search(0L, initial, order) ? order : null;
+	}
+
+	private boolean search(long done, S state, List<Operation> order) {
+		if (order.size() == history.size())
+			return true;
+		if (!explored.add(done + "|" + state))
+			return false;
+		// earliest response among pending operations
+		long minResponse = Long.MAX_VALUE;
+		for (int i=0; i<history.size(); i++)
+			if ((done & (1L << i)) == 0)
+				minResponse = Math.min(minResponse, history.get(i).response);
+		for (int i=0; i<history.size(); i++) {
+			Operation op = history.get(i);
+			if ((done & (1L << i)) != 0 || op.invoke > minResponse)
+				continue;
+			S next = model.apply(state, op);
+			if (next == null)
+				continue;
+			order.add(op);
+			if (search(done | (1L << i), next, order))
+				return true;
+			order.remove(order.size()-1);
+		}
+		return false;
+	}
+}
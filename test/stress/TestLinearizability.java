@@ -0,0 +1,176 @@
+package stress;
+
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.Test;
+
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+
+/**
+ * Records short concurrent histories of bookings and cancellations on a
+ * single doctor-day and checks each of them against a sequential model.
+ */
+public class TestLinearizability {
+
+	private static final String CODE = "XD345";
+	private static final String DATE = "2023-06-28";
+	private static final String[] SLOTS = {"10:00-10:20", "10:20-10:40", "10:40-11:00"};
+	private static final int THREADS = 3;
+	private static final int OPS = 4;
+	private static final int TRIALS = 300;
+
+	// state: booking id of each slot (0 = free) and last id assigned
+	private static class State {
+		final int[] booked;
+		final int lastId;
+
+		State(int[] booked, int lastId) {
+			this.booked = booked;
+			this.lastId = lastId;
+		}
+
+		State book(int slot) {
+			int[] b = booked.clone();
+			b[slot] = lastId+1;
+			return new State(b, lastId+1);
+		}
+
+		int slotOf(int id) {
+			for (int i=0; i<booked.length; i++)
+				if (booked[i] == id)
+					return i;
+			return -1;
+		}
+
+		@Override
+		public String toString() {
+			return java.util.Arrays.toString(booked) + lastId;
+		}
+	}
+
+	private static final LinearizabilityChecker.Model<State> MODEL = (s, op)->{
+		switch (op.name) {
+		case "book": {
+			int slot = Integer.parseInt(op.arg);
+			if (s.booked[slot] != 0)
+				return op.result.equals("fail") ? s : null;
+			return op.result.equals(Integer.toString(s.lastId+1)) ? s.book(slot) : null;
+		}
+		case "earliest": {
+			for (int i=0; i<s.booked.length; i++)
+				if (s.booked[i] == 0)
+					return op.result.equals((s.lastId+1) + "@" + SLOTS[i]) ? s.book(i) : null;
+			return op.result.equals("none") ? s : null;
+		}
+		case "cancel": {
+			int slot = s.slotOf(Integer.parseInt(op.arg));
+			if (slot < 0)
+				return op.result.equals("fail") ? s : null;
+			if (!op.result.equals("ok"))
+				return null;
+			int[] b = s.booked.clone();
+			b[slot] = 0;
+			return new State(b, s.lastId);
+		}
+		case "count": {
+			int n = 0;
+			for (int id : s.booked)
+				if (id != 0)
+					n++;
+			return op.result.equals(Integer.toString(n)) ? s : null;
+		}
+		default:
+			return null;
+		}
+	};
+
+	@Test
+	public void testBookingHistories() throws Exception {
+		LinearizabilityChecker<State> checker = new LinearizabilityChecker<>(MODEL);
+		Random seeds = new Random(1234);
+		for (int trial=0; trial<TRIALS; trial++) {
+			MedManager mgr = new MedManager();
+			mgr.addSpecialities("Cardiology");
+			mgr.addDoctor(CODE, "John", "Smith", "Cardiology");
+			mgr.addDailySchedule(CODE, DATE, "10:00", "11:00", 20);
+
+			List<LinearizabilityChecker.Operation> history = Collections.synchronizedList(new ArrayList<>());
+			CyclicBarrier start = new CyclicBarrier(THREADS);
+			Thread[] threads = new Thread[THREADS];
+			for (int t=0; t<THREADS; t++) {
+				long seed = seeds.nextLong();
+				threads[t] = new Thread(()->run(mgr, new Random(seed), start, history));
+				threads[t].start();
+			}
+			for (Thread t : threads)
+				t.join();
+
+			List<LinearizabilityChecker.Operation> order = checker.check(history, new State(new int[SLOTS.length], 0));
+			assertNotNull("not linearizable: " + history, order);
+		}
+	}
+
+	private static void run(MedManager mgr, Random rnd, CyclicBarrier start,
+			List<LinearizabilityChecker.Operation> history) {
+		List<String> mine = new ArrayList<>();
+		try {
+			start.await();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		for (int i=0; i<OPS; i++) {
+			int kind = rnd.nextInt(4);
+			String name, arg = "", result;
+			long invoke = System.nanoTime();
+			if (kind == 0) {
+				name = "book";
+				int slot = rnd.nextInt(SLOTS.length);
+				arg = Integer.toString(slot);
+				try {
+					result = mgr.setAppointment("SSN"+slot, "N", "S", CODE, DATE, SLOTS[slot]);
+					mine.add(result);
+				} catch (MedException e) {
+					result = "fail";
+				}
+			} else if (kind == 1) {
+				name = "earliest";
+				try {
+					String id = mgr.bookEarliest("SSN", "N", "S", "Cardiology", DATE);
+					if (id == null)
+						result = "none";
+					else {
+						// only this thread can move or cancel it
+						result = id + "@" + mgr.findSlotAt(CODE, DATE, mgr.getAppointmentTime(id));
+						mine.add(id);
+					}
+				} catch (MedException e) {
+					result = "error";
+				}
+			} else if (kind == 2 && !mine.isEmpty()) {
+				name = "cancel";
+				arg = mine.remove(rnd.nextInt(mine.size()));
+				try {
+					mgr.cancelAppointment(arg);
+					result = "ok";
+				} catch (MedException e) {
+					result = "fail";
+				}
+			} else {
+				name = "count";
+				try {
+					result = Integer.toString(mgr.setCurrentDate(DATE));
+				} catch (MedException e) {
+					throw new AssertionError(e);
+				}
+			}
+			history.add(new LinearizabilityChecker.Operation(name, arg, result, invoke, System.nanoTime()));
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package stress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.med.BookingPipeline;
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+
+public class TestPipeline {
+
+	private static final String DATE = "2023-06-28";
+	private MedManager mgr;
+
+	@Before
+	public void setUp() throws MedException {
+		mgr = new MedManager();
+		mgr.addSpecialities("Cardiology");
+		for (int d=0; d<4; d++) {
+			mgr.addDoctor("D"+d, "N", "S", "Cardiology");
+			// 08:00-20:00 every 10 minutes, 72 slots
+			mgr.addDailySchedule("D"+d, DATE, "08:00", "20:00", 10);
+		}
+	}
+
+	private static String slot(int i) {
+		int m = 8*60 + i*10;
+		return String.format("%02d:%02d-%02d:%02d", m/60, m%60, (m+10)/60, (m+10)%60);
+	}
+
+	@Test
+	public void testConcurrentProducers() throws Exception {
+		ConcurrentLinkedQueue<CompletableFuture<String>> futures = new ConcurrentLinkedQueue<>();
+		try (BookingPipeline pipeline = new BookingPipeline(mgr, 1024, 64)) {
+			List<Thread> producers = new ArrayList<>();
+			for (int t=0; t<4; t++) {
+				String doc = "D"+t;
+				producers.add(new Thread(()->{
+					try {
+						for (int i=0; i<72; i++)
+							futures.add(pipeline.setAppointment("SSN"+i, "N", "S", doc, DATE, slot(i)));
+						// already booked, and an unknown doctor
+						futures.add(pipeline.setAppointment("SSN", "N", "S", doc, DATE, slot(0)));
+						futures.add(pipeline.setAppointment("SSN", "N", "S", "XX", DATE, slot(0)));
+					} catch (MedException e) {
+						throw new AssertionError(e);
+					}
+				}));
+			}
+			producers.forEach(Thread::start);
+			for (Thread t : producers)
+				t.join();
+		}
+		// close waits for the queued requests
+		Set<String> ids = new HashSet<>();
+		int failed = 0;
+		for (CompletableFuture<String> f : futures) {
+			assertTrue(f.isDone());
+			try {
+				ids.add(f.get());
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof MedException);
+				failed++;
+			}
+		}
+		assertEquals(4*72, ids.size());
+		assertEquals(8, failed);
+		assertEquals(4*72, mgr.appointmentsBetween(DATE, DATE).count());
+	}
+
+	@Test
+	public void testCloseWhileSubmitting() throws Exception {
+		ConcurrentLinkedQueue<CompletableFuture<String>> futures = new ConcurrentLinkedQueue<>();
+		BookingPipeline pipeline = new BookingPipeline(mgr, 64, 8);
+		List<Thread> producers = new ArrayList<>();
+		for (int t=0; t<4; t++)
+			producers.add(new Thread(()->{
+				// until the pipeline refuses the requests
+				try {
+					while (true) {
+						try {
+							futures.add(pipeline.bookEarliest("SSN", "N", "S", "Cardiology", DATE));
+						} catch (MedException e) {
+							Thread.yield();
+						}
+					}
+				} catch (IllegalStateException e) {
+					return;
+				}
+			}));
+		producers.forEach(Thread::start);
+		Thread.sleep(20);
+		pipeline.close();
+		for (Thread t : producers)
+			t.join();
+		// every request queued before closing has been applied
+		assertTrue(futures.size() > 0);
+		for (CompletableFuture<String> f : futures)
+			assertTrue(f.isDone());
+	}
+
+	@Test
+	public void testOverload() throws Exception {
+		List<CompletableFuture<String>> accepted = new ArrayList<>();
+		int rejected = 0;
+		try (BookingPipeline pipeline = new BookingPipeline(mgr, 16, 8)) {
+			// the consumer waits for the manager, so the queue fills up
+			synchronized (mgr) {
+				for (int i=0; i<72; i++) {
+					try {
+						accepted.add(pipeline.bookEarliest("SSN"+i, "N", "S", "Cardiology", DATE));
+					} catch (MedException e) {
+						rejected++;
+					}
+				}
+				assertEquals(rejected, pipeline.rejected());
+				assertTrue(rejected > 0);
+				// the consumer may still be taking its batch: once it waits for
+				// the manager, filling the queue again is refused
+				int before = rejected;
+				for (int i=0; i<16 + 8 && rejected == before; i++) {
+					try {
+						accepted.add(pipeline.bookEarliest("SSN", "N", "S", "Cardiology", DATE));
+					} catch (MedException e) {
+						rejected++;
+					}
+				}
+				assertEquals(before + 1, rejected);
+				// the queue and at most a batch taken by the consumer
+				assertTrue(accepted.size() >= 16 && accepted.size() <= 16 + 8);
+			}
+			for (CompletableFuture<String> f : accepted)
+				assertNotNull(f.get(5, TimeUnit.SECONDS));
+			// requests are applied in batches
+			assertTrue(pipeline.batches() < accepted.size());
+		}
+		BookingPipeline closed = new BookingPipeline(mgr, 1, 1);
+		closed.close();
+		assertThrows(IllegalStateException.class, ()-> closed.setAppointment("SSN", "N", "S", "D0", DATE, slot(0)));
+		assertThrows(IllegalArgumentException.class, ()-> new BookingPipeline(mgr, 0, 8));
+		assertThrows(IllegalArgumentException.class, ()-> new BookingPipeline(mgr, 16, 0));
+	}
+}
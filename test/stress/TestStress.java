@@ -0,0 +1,193 @@
+package stress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import it.polito.med.MedException;
+import it.polito.med.MedManager;
+
+/**
+ * Hammers booking, cancellation and reception from many threads with
+ * random interleavings, then checks the invariants of the manager.
+ */
+public class TestStress {
+
+	private static final int THREADS = 8;
+	private static final int OPS_PER_THREAD = 5_000;
+	private static final int DOCTORS = 6;
+	private static final String[] DATES = {"2023-06-26", "2023-06-27", "2023-06-28"};
+	private static final String TODAY = "2023-06-27";
+	// 09:00-12:00 every 15 minutes
+	private static final int SLOTS_PER_DAY = 12;
+	private static final int PATIENTS = 40;
+
+	@Test
+	public void testInvariantsUnderContention() throws Exception {
+		MedManager mgr = new MedManager();
+		mgr.addSpecialities("Cardiology", "Orthopedy");
+		for (int d=0; d<DOCTORS; d++) {
+			mgr.addDoctor(doctor(d), "Name", "Surname", d % 2 == 0 ? "Cardiology" : "Orthopedy");
+			for (String date : DATES)
+				mgr.addDailySchedule(doctor(d), date, "09:00", "12:00", 15);
+		}
+		mgr.setCurrentDate(TODAY);
+
+		// every id ever returned, with the thread that got it
+		Map<String,Integer> ids = new ConcurrentHashMap<>();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		CyclicBarrier start = new CyclicBarrier(THREADS);
+		Thread[] threads = new Thread[THREADS];
+		for (int t=0; t<THREADS; t++) {
+			int thread = t;
+			threads[t] = new Thread(()->{
+				try {
+					start.await();
+					hammer(mgr, new Random(31L*thread + 7), thread, ids);
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		if (failure.get() != null)
+			throw new AssertionError("worker failed", failure.get());
+
+		checkInvariants(mgr);
+	}
+
+	private static void hammer(MedManager mgr, Random rnd, int thread, Map<String,Integer> ids) {
+		List<String> mine = new ArrayList<>();
+		for (int i=0; i<OPS_PER_THREAD; i++) {
+			String doc = doctor(rnd.nextInt(DOCTORS));
+			String date = DATES[rnd.nextInt(DATES.length)];
+			String ssn = "SSN" + rnd.nextInt(PATIENTS);
+			try {
+				switch (rnd.nextInt(9)) {
+				case 0:
+				case 1:
+					book(ids, thread, mine, mgr.setAppointment(ssn, "N", "S", doc, date, slot(rnd.nextInt(SLOTS_PER_DAY))));
+					break;
+				case 2:
+					book(ids, thread, mine, mgr.bookEarliest(ssn, "N", "S", rnd.nextBoolean() ? "Cardiology" : "Orthopedy", date));
+					break;
+				case 3:
+					if (!mine.isEmpty())
+						mgr.cancelAppointment(mine.remove(rnd.nextInt(mine.size())));
+					break;
+				case 4:
+					if (!mine.isEmpty())
+						mgr.rescheduleAppointment(mine.get(rnd.nextInt(mine.size())), doc, date, slot(rnd.nextInt(SLOTS_PER_DAY)));
+					break;
+				case 5:
+					mgr.accept(ssn);
+					break;
+				case 6:
+					String next = mgr.nextAppointment(doc);
+					if (next != null)
+						mgr.completeAppointment(doc, next);
+					break;
+				case 7:
+					mgr.findSlots(date, "Cardiology");
+					break;
+				default:
+					mgr.listAppointments(doc, date);
+				}
+			} catch (MedException e) {
+				// taken slot or appointment completed by another thread
+			}
+		}
+	}
+
+	private static void book(Map<String,Integer> ids, int thread, List<String> mine, String id) {
+		if (id == null)
+			return;
+		Integer previous = ids.putIfAbsent(id, thread);
+		assertNull("duplicate id " + id, previous);
+		mine.add(id);
+	}
+
+	private static void checkInvariants(MedManager mgr) throws MedException {
+		int total = 0;
+		Set<String> liveIds = new HashSet<>();
+		for (int d=0; d<DOCTORS; d++) {
+			String doc = doctor(d);
+			int docApps = 0;
+			for (String date : DATES) {
+				Collection<String> apps = mgr.listAppointments(doc, date);
+				// no double booking: one appointment per slot
+				Set<String> times = new HashSet<>();
+				for (String a : apps)
+					assertTrue("double booking " + doc + " " + a, times.add(a.substring(0, 5)));
+				assertTrue(apps.size() <= SLOTS_PER_DAY);
+				// the ordered index agrees with the listing
+				List<String> range = new ArrayList<>();
+				synchronized (mgr) {
+					mgr.appointmentsBetween(doc, date, date).forEach(range::add);
+				}
+				assertEquals(apps.size(), range.size());
+				for (String id : range) {
+					assertEquals(doc, mgr.getAppointmentDoctor(id));
+					assertEquals(date, mgr.getAppointmentDate(id));
+					assertTrue(liveIds.add(id));
+				}
+				docApps += apps.size();
+			}
+			// counters consistent with the data
+			assertEquals((double) docApps / (DATES.length*SLOTS_PER_DAY), mgr.scheduleCompleteness().get(doc), 1e-9);
+			total += docApps;
+		}
+		synchronized (mgr) {
+			assertEquals(total, mgr.appointmentsBetween(DATES[0], DATES[DATES.length-1]).count());
+		}
+		assertEquals(mgr.appointmentsBetween(TODAY, TODAY).count(), mgr.setCurrentDate(TODAY));
+
+		// free slots for bookEarliest agree with the bookings
+		int booked = 0;
+		for (int d=0; d<DOCTORS; d+=2)
+			for (String date : DATES)
+				booked += mgr.listAppointments(doctor(d), date).size();
+		int free = 0;
+		while (mgr.bookEarliest("SSNX", "N", "S", "Cardiology", DATES[0]) != null)
+			free++;
+		assertEquals(DOCTORS/2 * DATES.length * SLOTS_PER_DAY, booked + free);
+
+		// reception queues drain in time order, only with today's appointments
+		for (int d=0; d<DOCTORS; d++) {
+			String doc = doctor(d);
+			String prev = "";
+			String next;
+			while ((next = mgr.nextAppointment(doc)) != null) {
+				assertEquals(TODAY, mgr.getAppointmentDate(next));
+				String time = mgr.getAppointmentTime(next);
+				assertTrue("queue out of order", time.compareTo(prev) >= 0);
+				prev = time;
+				mgr.completeAppointment(doc, next);
+			}
+		}
+	}
+
+	private static String doctor(int d) {
+		return "D" + d;
+	}
+
+	private static String slot(int i) {
+		int start = 9*60 + i*15;
+		return String.format("%02d:%02d-%02d:%02d", start/60, start%60, (start+15)/60, (start+15)%60);
+	}
+}